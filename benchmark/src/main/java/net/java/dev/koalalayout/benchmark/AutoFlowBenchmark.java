@@ -0,0 +1,93 @@
+/*
+ * This file is part of KoalaLayout.
+ *
+ * Koala layout is a flexible grid layout for Java Swing.
+ * Copyright (C) 2012 Peter Flukiger, Jean-Marc Borer
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.java.dev.koalalayout.benchmark;
+
+import java.awt.Component;
+import java.util.concurrent.TimeUnit;
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+import net.java.dev.koalalayout.KoalaLayout;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures auto placement of children added without a position: a container is filled, every fourth child is
+ * removed and as many children are added again, filling the holes in dense mode. Each invocation starts from an empty
+ * panel.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class AutoFlowBenchmark {
+
+    private static final int COLUMNS = 100;
+
+    @Param({"2000", "20000"})
+    public int childCount;
+
+    @Param({"false", "true"})
+    public boolean dense;
+
+    private JPanel panel;
+    private Component[] components;
+    private Component[] replacements;
+
+    @Setup(Level.Invocation)
+    public void setUp() {
+        KoalaLayout layout = new KoalaLayout(COLUMNS, 1);
+        layout.setAutoFlow(KoalaLayout.AutoFlow.ROW, dense);
+        panel = new JPanel(layout);
+        components = new Component[childCount];
+        for (int i = 0; i < childCount; i++) {
+            components[i] = new JLabel("Cell " + i);
+        }
+        replacements = new Component[childCount / 4];
+        for (int i = 0; i < replacements.length; i++) {
+            replacements[i] = new JLabel("New " + i);
+        }
+    }
+
+    @Benchmark
+    public JPanel addRemoveAndAddAgain() {
+        for (Component comp : components) {
+            panel.add(comp);
+        }
+        for (int i = 0; i < replacements.length; i++) {
+            panel.remove(i * 3);
+        }
+        for (Component comp : replacements) {
+            panel.add(comp);
+        }
+        return panel;
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * This file is part of KoalaLayout.
+ *
+ * Koala layout is a flexible grid layout for Java Swing.
+ * Copyright (C) 2012 Peter Flukiger, Jean-Marc Borer
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.java.dev.koalalayout.benchmark;
+
+import java.awt.Component;
+import java.util.concurrent.TimeUnit;
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+import net.java.dev.koalalayout.KoalaCell;
+import net.java.dev.koalalayout.KoalaLayout;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures filling an empty container with many children, once with a layout pass after every add, as a form
+ * populated from a model without batching does, and once in a single batch with
+ * {@link KoalaLayout#addAll(java.awt.Container, Component[], Object[])}. Each invocation starts from an empty panel.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class BatchUpdateBenchmark {
+
+    private static final int COLUMNS = 50;
+
+    @Param({"500", "5000"})
+    public int childCount;
+
+    private JPanel panel;
+    private KoalaLayout layout;
+    private Component[] components;
+    private KoalaCell[] cells;
+
+    @Setup(Level.Invocation)
+    public void setUp() {
+        int rows = (childCount + COLUMNS - 1) / COLUMNS;
+        layout = new KoalaLayout(COLUMNS, rows);
+        panel = new JPanel(layout);
+        panel.setSize(1600, 1200);
+        components = new Component[childCount];
+        cells = new KoalaCell[childCount];
+        for (int i = 0; i < childCount; i++) {
+            components[i] = new JLabel("Cell " + i);
+            cells[i] = KoalaCell.of(i % COLUMNS, i / COLUMNS, 1, 1);
+        }
+    }
+
+    @Benchmark
+    public JPanel passAfterEachAdd() {
+        for (int i = 0; i < childCount; i++) {
+            panel.add(components[i], cells[i]);
+            layout.layoutContainer(panel);
+        }
+        return panel;
+    }
+
+    @Benchmark
+    public JPanel addAllInOneBatch() {
+        layout.addAll(panel, components, cells);
+        layout.layoutContainer(panel);
+        return panel;
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * This file is part of KoalaLayout.
+ *
+ * Koala layout is a flexible grid layout for Java Swing.
+ * Copyright (C) 2012 Peter Flukiger, Jean-Marc Borer
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.java.dev.koalalayout.benchmark;
+
+import java.awt.Dimension;
+import java.util.concurrent.TimeUnit;
+import javax.swing.JPanel;
+import net.java.dev.koalalayout.KoalaLayout;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the three hot paths of KoalaLayout: <code>layoutContainer</code>, <code>preferredLayoutSize</code> and
+ * <code>minimumLayoutSize</code>. Everything runs headless on plain Swing components, no window is ever shown.
+ * <p>
+ * The layout pass alternates between two container widths so that every invocation behaves like one step of a
+ * window resize. The size queries invalidate the layout first, just as <code>Container.invalidate</code> does
+ * before Swing asks for sizes again during a revalidate.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class KoalaLayoutBenchmark {
+
+    private static final int VIEW_WIDTH = 1600;
+    private static final int VIEW_HEIGHT = 1200;
+
+    @Param({"10", "100", "1000", "10000", "50000"})
+    public int childCount;
+
+    @Param({"1x1", "10x10", "100x100", "500x500"})
+    public String grid;
+
+    @Param({"ABSOLUTE", "RELATIVE", "REMAINDER", "MIXED"})
+    public String placement;
+
+    @Param({"BOTH", "MIXED"})
+    public String fillMix;
+
+    @Param({"false", "true"})
+    public boolean specialized;
+
+    private JPanel panel;
+    private KoalaLayout layout;
+    private boolean wide;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        int[] gridSize = LayoutFixture.parseGrid(grid);
+        panel = LayoutFixture.createPanel(childCount, gridSize[0], gridSize[1],
+                LayoutFixture.Placement.valueOf(placement), LayoutFixture.FillMix.valueOf(fillMix));
+        layout = (KoalaLayout) panel.getLayout();
+        layout.setSpecialized(specialized);
+        panel.setSize(VIEW_WIDTH, VIEW_HEIGHT);
+        layout.layoutContainer(panel);
+    }
+
+    @Benchmark
+    public JPanel layoutContainer() {
+        wide = !wide;
+        panel.setSize(wide ? VIEW_WIDTH + 1 : VIEW_WIDTH, VIEW_HEIGHT);
+        layout.layoutContainer(panel);
+        return panel;
+    }
+
+    @Benchmark
+    public Dimension preferredLayoutSize() {
+        layout.invalidateLayout(panel);
+        return layout.preferredLayoutSize(panel);
+    }
+
+    @Benchmark
+    public Dimension minimumLayoutSize() {
+        layout.invalidateLayout(panel);
+        return layout.minimumLayoutSize(panel);
+    }
+}
@@ -0,0 +1,157 @@
+/*
+ * This file is part of KoalaLayout.
+ *
+ * Koala layout is a flexible grid layout for Java Swing.
+ * Copyright (C) 2012 Peter Flukiger, Jean-Marc Borer
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.java.dev.koalalayout.benchmark;
+
+import java.awt.GridBagConstraints;
+import java.awt.Insets;
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+import net.java.dev.koalalayout.KoalaConstraints;
+import net.java.dev.koalalayout.KoalaLayout;
+
+/**
+ * Builds the headless containers used by the benchmarks. All children are plain <code>JLabel</code>s so that
+ * preferred and minimum sizes are computed by a real UI delegate, just like in an application form.
+ */
+final class LayoutFixture {
+
+    /**
+     * How the grid positions of the children are expressed.
+     */
+    enum Placement {
+        /**
+         * Every child has an explicit gridx/gridy.
+         */
+        ABSOLUTE,
+        /**
+         * The first child of a row is explicit, the following ones use <code>GridBagConstraints.RELATIVE</code>.
+         */
+        RELATIVE,
+        /**
+         * Like {@link #RELATIVE} but the last child of each row spans the <code>GridBagConstraints.REMAINDER</code>.
+         */
+        REMAINDER,
+        /**
+         * Rows cycle through the three modes above.
+         */
+        MIXED
+    }
+
+    /**
+     * Which fill and anchor values the children use.
+     */
+    enum FillMix {
+        /**
+         * All children fill their cell, the KoalaLayout default.
+         */
+        BOTH,
+        /**
+         * Children cycle through every fill and anchor value, forcing preferred size lookups.
+         */
+        MIXED
+    }
+
+    private static final int[] FILLS = {
+        GridBagConstraints.BOTH, GridBagConstraints.NONE, GridBagConstraints.HORIZONTAL, GridBagConstraints.VERTICAL
+    };
+    private static final int[] ANCHORS = {
+        GridBagConstraints.CENTER, GridBagConstraints.NORTH, GridBagConstraints.NORTHEAST, GridBagConstraints.EAST,
+        GridBagConstraints.SOUTHEAST, GridBagConstraints.SOUTH, GridBagConstraints.SOUTHWEST, GridBagConstraints.WEST,
+        GridBagConstraints.NORTHWEST
+    };
+
+    private LayoutFixture() {
+    }
+
+    /**
+     * Parses a grid specification of the form <code>WIDTHxHEIGHT</code>.
+     *
+     * @param grid the specification, e.g. "100x100"
+     * @return width and height of the grid
+     */
+    static int[] parseGrid(String grid) {
+        int separator = grid.indexOf('x');
+        if (separator <= 0) {
+            throw new IllegalArgumentException("cannot parse grid: expected WIDTHxHEIGHT but got " + grid);
+        }
+        return new int[]{Integer.parseInt(grid.substring(0, separator)), Integer.parseInt(grid.substring(separator + 1))};
+    }
+
+    /**
+     * Creates a panel laid out by a KoalaLayout and populated with <code>childCount</code> labels.
+     *
+     * @param childCount number of children
+     * @param gridWidth initial grid width of the layout
+     * @param gridHeight initial grid height of the layout
+     * @param placement how positions are expressed
+     * @param fillMix which fill and anchor values are used
+     * @return the populated panel, sized but not yet laid out
+     */
+    static JPanel createPanel(int childCount, int gridWidth, int gridHeight, Placement placement, FillMix fillMix) {
+        JPanel panel = new JPanel(new KoalaLayout(gridWidth, gridHeight));
+        for (int i = 0; i < childCount; i++) {
+            int cell = i % (gridWidth * gridHeight);
+            int column = cell % gridWidth;
+            int row = cell / gridWidth;
+
+            KoalaConstraints c = new KoalaConstraints();
+            c.gridwidth = 1;
+            c.gridheight = 1;
+            c.gridy = row;
+            c.gridx = column;
+            c.insets = new Insets(i % 3, i % 2, i % 3, i % 2);
+            if (column > 0) {
+                switch (rowPlacement(placement, row)) {
+                    case RELATIVE:
+                        c.gridx = GridBagConstraints.RELATIVE;
+                        break;
+                    case REMAINDER:
+                        c.gridx = GridBagConstraints.RELATIVE;
+                        if (column == gridWidth - 1) {
+                            c.gridwidth = GridBagConstraints.REMAINDER;
+                        }
+                        break;
+                    default:
+                        break;
+                }
+            }
+            if (fillMix == FillMix.MIXED) {
+                c.fill = FILLS[i % FILLS.length];
+                c.anchor = ANCHORS[i % ANCHORS.length];
+            }
+            panel.add(new JLabel("Cell " + i), c);
+        }
+        return panel;
+    }
+
+    private static Placement rowPlacement(Placement placement, int row) {
+        if (placement != Placement.MIXED) {
+            return placement;
+        }
+        switch (row % 3) {
+            case 0:
+                return Placement.ABSOLUTE;
+            case 1:
+                return Placement.RELATIVE;
+            default:
+                return Placement.REMAINDER;
+        }
+    }
+}
@@ -0,0 +1,333 @@
+/*
+ * This file is part of KoalaLayout.
+ *
+ * Koala layout is a flexible grid layout for Java Swing.
+ * Copyright (C) 2012 Peter Flukiger, Jean-Marc Borer
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.java.dev.koalalayout;
+
+import java.awt.Component;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Tells which components occupy which cells of a grid. Small grids use an array with one slot per cell; a cell holds
+ * either a single component or, when components overlap, an array of components. Large grids keep one area per
+ * component, so that memory does not depend on how many cells a component spans. Areas are sorted by first row in one
+ * bucket per power of two of their height; a query looks in each bucket at the rows its tallest possible area could
+ * reach from, so that a few tall components do not make queries among short ones scan more rows.
+ */
+final class CellOccupancyIndex {
+
+    /**
+     * largest number of cells indexed by an array
+     */
+    static final int DENSE_LIMIT = 1 << 16;
+
+    private final int gridWidth;
+    private final int gridHeight;
+    private final Object[] dense;
+    /**
+     * components by first occupied row, for grids too large for an array; bucket <code>k</code> holds the components
+     * occupying from <code>2^k</code> to <code>2^(k+1) - 1</code> rows
+     */
+    private final TreeMap<Integer, List<Component>>[] sparse;
+    /**
+     * cells x, y, width and height occupied by each indexed component
+     */
+    private final Map<Component, int[]> areas = new IdentityHashMap<Component, int[]>();
+    /**
+     * number of cells occupied by more than one component, respectively of overlapping pairs of components in sparse
+     * grids
+     */
+    private int overlaps;
+    /**
+     * true if the cells of a component only depend on its own constraints, i.e. if no <code>RELATIVE</code> or
+     * <code>REMAINDER</code> constraint was used, so that single components can be updated in place
+     */
+    final boolean incremental;
+
+    @SuppressWarnings("unchecked")
+    private CellOccupancyIndex(int gridWidth, int gridHeight, boolean incremental) {
+        this.gridWidth = gridWidth;
+        this.gridHeight = gridHeight;
+        this.incremental = incremental;
+        if ((long) gridWidth * gridHeight <= DENSE_LIMIT) {
+            dense = new Object[gridWidth * gridHeight];
+            sparse = null;
+        } else {
+            dense = null;
+            sparse = new TreeMap[Integer.SIZE];
+        }
+    }
+
+    /**
+     * Indexes the resolved cells of a plan.
+     *
+     * @param components the children the plan was compiled for
+     * @param plan the compiled constraints
+     * @param incremental true if no constraint of the plan is relative
+     * @return the index
+     */
+    static CellOccupancyIndex build(Component[] components, KoalaLayoutPlan plan, boolean incremental) {
+        CellOccupancyIndex index = new CellOccupancyIndex(plan.gridWidth, plan.gridHeight, incremental);
+        int[] cells = plan.cells;
+        for (int i = 0; i < plan.size(); i++) {
+            int offset = i * KoalaLayoutPlan.STRIDE;
+            index.put(components[i], cells[offset + KoalaLayoutPlan.GRID_X], cells[offset + KoalaLayoutPlan.GRID_Y],
+                    cells[offset + KoalaLayoutPlan.GRID_WIDTH], cells[offset + KoalaLayoutPlan.GRID_HEIGHT]);
+        }
+        return index;
+    }
+
+    /**
+     * Tells whether the index was built for a grid of the given dimensions.
+     */
+    boolean matches(int gridWidth, int gridHeight) {
+        return this.gridWidth == gridWidth && this.gridHeight == gridHeight;
+    }
+
+    /**
+     * Tells whether the given cells lie within the indexed grid.
+     */
+    boolean contains(int x, int y, int width, int height) {
+        return x >= 0 && y >= 0 && width > 0 && height > 0 && x + width <= gridWidth && y + height <= gridHeight;
+    }
+
+    /**
+     * Records the cells of a component, replacing the ones recorded before. Cells outside of the grid are ignored.
+     */
+    void put(Component comp, int x, int y, int width, int height) {
+        remove(comp);
+        areas.put(comp, new int[]{x, y, width, height});
+        if (sparse != null) {
+            int[] cells = clip(x, y, width, height);
+            if (cells == null) {
+                return;
+            }
+            overlaps += candidatesIn(cells).size();
+            int bucket = bucketOf(cells[3]);
+            if (sparse[bucket] == null) {
+                sparse[bucket] = new TreeMap<Integer, List<Component>>();
+            }
+            List<Component> row = sparse[bucket].get(cells[1]);
+            if (row == null) {
+                row = new ArrayList<Component>(2);
+                sparse[bucket].put(cells[1], row);
+            }
+            row.add(comp);
+            return;
+        }
+        int endX = Math.min(x + width, gridWidth);
+        int endY = Math.min(y + height, gridHeight);
+        for (int row = Math.max(y, 0); row < endY; row++) {
+            for (int column = Math.max(x, 0); column < endX; column++) {
+                addOccupant(column, row, comp);
+            }
+        }
+    }
+
+    /**
+     * Forgets the cells of a component.
+     */
+    void remove(Component comp) {
+        int[] area = areas.remove(comp);
+        if (area == null) {
+            return;
+        }
+        if (sparse != null) {
+            int[] cells = clip(area[0], area[1], area[2], area[3]);
+            if (cells == null) {
+                return;
+            }
+            TreeMap<Integer, List<Component>> rows = sparse[bucketOf(cells[3])];
+            List<Component> row = rows.get(cells[1]);
+            row.remove(comp);
+            if (row.isEmpty()) {
+                rows.remove(cells[1]);
+            }
+            overlaps -= candidatesIn(cells).size();
+            return;
+        }
+        int endX = Math.min(area[0] + area[2], gridWidth);
+        int endY = Math.min(area[1] + area[3], gridHeight);
+        for (int row = Math.max(area[1], 0); row < endY; row++) {
+            for (int column = Math.max(area[0], 0); column < endX; column++) {
+                removeOccupant(column, row, comp);
+            }
+        }
+    }
+
+    /**
+     * Returns a component occupying the given cell. When several components overlap, any one of them is returned.
+     */
+    Component componentAt(int x, int y) {
+        if (x < 0 || y < 0 || x >= gridWidth || y >= gridHeight) {
+            return null;
+        }
+        if (sparse != null) {
+            Set<Component> occupants = candidatesIn(new int[]{x, y, 1, 1});
+            return occupants.isEmpty() ? null : occupants.iterator().next();
+        }
+        Object occupant = get(x, y);
+        if (occupant instanceof Component[]) {
+            return ((Component[]) occupant)[0];
+        }
+        return (Component) occupant;
+    }
+
+    /**
+     * Collects the components occupying at least one of the given cells.
+     */
+    Set<Component> componentsIn(int x, int y, int width, int height) {
+        if (sparse != null) {
+            int[] cells = clip(x, y, width, height);
+            return cells == null ? new LinkedHashSet<Component>() : candidatesIn(cells);
+        }
+        Set<Component> result = new LinkedHashSet<Component>();
+        int endX = (int) Math.min((long) x + width, gridWidth);
+        int endY = (int) Math.min((long) y + height, gridHeight);
+        for (int row = Math.max(y, 0); row < endY; row++) {
+            for (int column = Math.max(x, 0); column < endX; column++) {
+                Object occupant = get(column, row);
+                if (occupant instanceof Component[]) {
+                    for (Component comp : (Component[]) occupant) {
+                        result.add(comp);
+                    }
+                } else if (occupant != null) {
+                    result.add((Component) occupant);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the cells recorded for a component, or <code>null</code> if it is not indexed.
+     */
+    int[] areaOf(Component comp) {
+        return areas.get(comp);
+    }
+
+    /**
+     * Tells whether at least one cell is occupied by more than one component.
+     */
+    boolean hasOverlaps() {
+        return overlaps > 0;
+    }
+
+    /**
+     * Collects the components of the sparse rows sharing at least one of the given cells, which lie within the grid.
+     */
+    private Set<Component> candidatesIn(int[] cells) {
+        Set<Component> result = new LinkedHashSet<Component>();
+        int toRow = cells[1] + cells[3] - 1;
+        for (int bucket = 0; bucket < sparse.length; bucket++) {
+            TreeMap<Integer, List<Component>> rows = sparse[bucket];
+            if (rows == null || rows.isEmpty()) {
+                continue;
+            }
+            // the tallest area of the bucket reaches the first queried row from this row on
+            int fromRow = (int) Math.max(0L, cells[1] - (2L << bucket) + 2);
+            for (List<Component> row : rows.subMap(fromRow, true, toRow, true).values()) {
+                for (Component comp : row) {
+                    int[] area = areas.get(comp);
+                    int[] other = clip(area[0], area[1], area[2], area[3]);
+                    if (other[0] < cells[0] + cells[2] && cells[0] < other[0] + other[2]
+                            && other[1] < cells[1] + cells[3] && cells[1] < other[1] + other[3]) {
+                        result.add(comp);
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the sparse bucket of areas with the given positive number of rows.
+     */
+    private static int bucketOf(int height) {
+        return Integer.SIZE - 1 - Integer.numberOfLeadingZeros(height);
+    }
+
+    /**
+     * Returns x, y, width and height of the given cells within the grid, or <code>null</code> if none lies within it.
+     */
+    private int[] clip(long x, long y, long width, long height) {
+        long startX = Math.max(x, 0);
+        long startY = Math.max(y, 0);
+        long endX = Math.min(x + width, gridWidth);
+        long endY = Math.min(y + height, gridHeight);
+        if (endX <= startX || endY <= startY) {
+            return null;
+        }
+        return new int[]{(int) startX, (int) startY, (int) (endX - startX), (int) (endY - startY)};
+    }
+
+    private Object get(int x, int y) {
+        return dense[y * gridWidth + x];
+    }
+
+    private void set(int x, int y, Object occupant) {
+        dense[y * gridWidth + x] = occupant;
+    }
+
+    private void addOccupant(int x, int y, Component comp) {
+        Object occupant = get(x, y);
+        if (occupant == null) {
+            set(x, y, comp);
+        } else if (occupant instanceof Component[]) {
+            Component[] occupants = (Component[]) occupant;
+            Component[] grown = new Component[occupants.length + 1];
+            System.arraycopy(occupants, 0, grown, 0, occupants.length);
+            grown[occupants.length] = comp;
+            set(x, y, grown);
+        } else {
+            set(x, y, new Component[]{(Component) occupant, comp});
+            overlaps++;
+        }
+    }
+
+    private void removeOccupant(int x, int y, Component comp) {
+        Object occupant = get(x, y);
+        if (occupant == comp) {
+            set(x, y, null);
+        } else if (occupant instanceof Component[]) {
+            Component[] occupants = (Component[]) occupant;
+            int index = 0;
+            while (index < occupants.length && occupants[index] != comp) {
+                index++;
+            }
+            if (index == occupants.length) {
+                return;
+            }
+            if (occupants.length == 2) {
+                set(x, y, occupants[1 - index]);
+                overlaps--;
+            } else {
+                Component[] shrunk = new Component[occupants.length - 1];
+                System.arraycopy(occupants, 0, shrunk, 0, index);
+                System.arraycopy(occupants, index + 1, shrunk, index, occupants.length - index - 1);
+                set(x, y, shrunk);
+            }
+        }
+    }
+}
@@ -0,0 +1,177 @@
+/*
+ * This file is part of KoalaLayout.
+ *
+ * Koala layout is a flexible grid layout for Java Swing.
+ * Copyright (C) 2012 Peter Flukiger, Jean-Marc Borer
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.java.dev.koalalayout;
+
+import java.awt.Component;
+import java.awt.GridBagConstraints;
+import java.io.Serializable;
+import java.util.AbstractMap;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Immutable snapshot of the constraints table of a {@link KoalaLayout}. A change returns a new snapshot sharing the
+ * unchanged entries: recent changes are kept in a small overlay which is copied on each change, and merged into a new
+ * base once it grew past {@link #OVERLAY_LIMIT} entries. Setting the constraints of <i>n</i> components one by one
+ * thus costs <i>O(n<sup>2</sup> / OVERLAY_LIMIT)</i> instead of copying the whole table every time.
+ * <p>
+ * Components are compared by identity, like in AWT containers.
+ */
+final class ConstraintsTable extends AbstractMap<Component, GridBagConstraints> implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+    /**
+     * largest number of changes kept apart from the base
+     */
+    static final int OVERLAY_LIMIT = 64;
+    /**
+     * marks components removed by the overlay
+     */
+    private static final GridBagConstraints REMOVED = new GridBagConstraints();
+    static final ConstraintsTable EMPTY = new ConstraintsTable(new IdentityHashMap<Component, GridBagConstraints>(),
+            new IdentityHashMap<Component, GridBagConstraints>(), 0);
+
+    /**
+     * entries of the snapshot except the ones changed by the overlay; neither map is modified once published
+     */
+    private final IdentityHashMap<Component, GridBagConstraints> base;
+    private final IdentityHashMap<Component, GridBagConstraints> overlay;
+    private final int size;
+    /**
+     * all entries, merged on demand for iteration
+     */
+    private transient volatile Map<Component, GridBagConstraints> merged;
+
+    private ConstraintsTable(IdentityHashMap<Component, GridBagConstraints> base,
+            IdentityHashMap<Component, GridBagConstraints> overlay, int size) {
+        this.base = base;
+        this.overlay = overlay;
+        this.size = size;
+    }
+
+    /**
+     * Returns the given table as a snapshot, copying it unless it already is one.
+     */
+    static ConstraintsTable of(Map<Component, GridBagConstraints> table) {
+        if (table instanceof ConstraintsTable) {
+            return (ConstraintsTable) table;
+        }
+        IdentityHashMap<Component, GridBagConstraints> base = new IdentityHashMap<Component, GridBagConstraints>(table);
+        return new ConstraintsTable(base, new IdentityHashMap<Component, GridBagConstraints>(), base.size());
+    }
+
+    /**
+     * Returns a snapshot in which the given component has the given constraints.
+     */
+    ConstraintsTable with(Component comp, GridBagConstraints constraints) {
+        return change(Collections.singletonMap(comp, constraints));
+    }
+
+    /**
+     * Returns a snapshot in which the given components have the given constraints; components mapped to
+     * <code>null</code> are removed.
+     */
+    ConstraintsTable withAll(Map<Component, GridBagConstraints> constraints) {
+        return change(constraints);
+    }
+
+    /**
+     * Returns a snapshot without the given component.
+     */
+    ConstraintsTable without(Component comp) {
+        if (!containsKey(comp)) {
+            return this;
+        }
+        return change(Collections.singletonMap(comp, REMOVED));
+    }
+
+    private ConstraintsTable change(Map<Component, GridBagConstraints> changes) {
+        @SuppressWarnings("unchecked")
+        IdentityHashMap<Component, GridBagConstraints> changed = (IdentityHashMap<Component, GridBagConstraints>) overlay.clone();
+        int newSize = size;
+        for (Map.Entry<Component, GridBagConstraints> entry : changes.entrySet()) {
+            boolean present = containsKey(entry.getKey());
+            boolean removed = entry.getValue() == null || entry.getValue() == REMOVED;
+            if (removed && !base.containsKey(entry.getKey())) {
+                changed.remove(entry.getKey());
+            } else {
+                changed.put(entry.getKey(), removed ? REMOVED : entry.getValue());
+            }
+            newSize += (removed ? 0 : 1) - (present ? 1 : 0);
+        }
+        if (changed.size() <= OVERLAY_LIMIT) {
+            return new ConstraintsTable(base, changed, newSize);
+        }
+        @SuppressWarnings("unchecked")
+        IdentityHashMap<Component, GridBagConstraints> newBase = (IdentityHashMap<Component, GridBagConstraints>) base.clone();
+        apply(newBase, changed);
+        return new ConstraintsTable(newBase, new IdentityHashMap<Component, GridBagConstraints>(), newSize);
+    }
+
+    private static void apply(Map<Component, GridBagConstraints> target, Map<Component, GridBagConstraints> changes) {
+        for (Map.Entry<Component, GridBagConstraints> entry : changes.entrySet()) {
+            if (entry.getValue() == REMOVED) {
+                target.remove(entry.getKey());
+            } else {
+                target.put(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    @Override
+    public GridBagConstraints get(Object key) {
+        GridBagConstraints constraints = overlay.get(key);
+        if (constraints != null) {
+            return constraints == REMOVED ? null : constraints;
+        }
+        return base.get(key);
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return get(key) != null;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public Set<Map.Entry<Component, GridBagConstraints>> entrySet() {
+        Map<Component, GridBagConstraints> all = merged;
+        if (all == null) {
+            IdentityHashMap<Component, GridBagConstraints> copy = new IdentityHashMap<Component, GridBagConstraints>(base);
+            apply(copy, overlay);
+            all = Collections.unmodifiableMap(copy);
+            merged = all;
+        }
+        return all.entrySet();
+    }
+
+    /**
+     * Serializes the entries as a plain map, the removal marker has no identity in another VM.
+     */
+    private Object writeReplace() {
+        return new IdentityHashMap<Component, GridBagConstraints>(this);
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ * This file is part of KoalaLayout.
+ *
+ * Koala layout is a flexible grid layout for Java Swing.
+ * Copyright (C) 2012 Peter Flukiger, Jean-Marc Borer
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.java.dev.koalalayout;
+
+import java.awt.Container;
+import java.awt.Dimension;
+import java.awt.Insets;
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Threshold;
+
+/**
+ * Flight recorder events of {@link KoalaLayout}. Each pass of <code>layoutContainer</code>,
+ * <code>preferredLayoutSize</code> and <code>minimumLayoutSize</code> taking longer than the event threshold, one
+ * millisecond by default, is recorded together with the container it ran for. The threshold and stack traces are
+ * configured like for built-in events, e.g. <code>net.java.dev.koalalayout.LayoutContainer#threshold=0 ms</code>.
+ * <p>
+ * No event is allocated while no recording enables the event type, so that passes cost one flag read then.
+ * Only used when {@link FlightRecorderSupport#AVAILABLE} is true.
+ */
+final class FlightRecorderEvents {
+
+    private static final EventType LAYOUT_CONTAINER = EventType.getEventType(LayoutContainerEvent.class);
+    private static final EventType PREFERRED_LAYOUT_SIZE = EventType.getEventType(PreferredLayoutSizeEvent.class);
+    private static final EventType MINIMUM_LAYOUT_SIZE = EventType.getEventType(MinimumLayoutSizeEvent.class);
+
+    private FlightRecorderEvents() {
+    }
+
+    static void layoutContainer(KoalaLayout layout, Container parent) {
+        if (!LAYOUT_CONTAINER.isEnabled()) {
+            layout.layout(parent);
+            return;
+        }
+        LayoutContainerEvent event = new LayoutContainerEvent();
+        event.begin();
+        layout.layout(parent);
+        event.end();
+        if (event.shouldCommit()) {
+            event.movedCount = layout.getMovedComponentCount();
+            event.describe(layout, parent);
+            event.commit();
+        }
+    }
+
+    static Dimension preferredLayoutSize(KoalaLayout layout, Container parent) {
+        if (!PREFERRED_LAYOUT_SIZE.isEnabled()) {
+            return layout.preferredSize(parent);
+        }
+        PreferredLayoutSizeEvent event = new PreferredLayoutSizeEvent();
+        event.begin();
+        Dimension size = layout.preferredSize(parent);
+        event.end();
+        if (event.shouldCommit()) {
+            event.describe(layout, parent);
+            event.commit();
+        }
+        return size;
+    }
+
+    static Dimension minimumLayoutSize(KoalaLayout layout, Container parent) {
+        if (!MINIMUM_LAYOUT_SIZE.isEnabled()) {
+            return layout.minimumSize(parent);
+        }
+        MinimumLayoutSizeEvent event = new MinimumLayoutSizeEvent();
+        event.begin();
+        Dimension size = layout.minimumSize(parent);
+        event.end();
+        if (event.shouldCommit()) {
+            event.describe(layout, parent);
+            event.commit();
+        }
+        return size;
+    }
+
+    @Category({"Java Application", "KoalaLayout"})
+    @Threshold("1 ms")
+    abstract static class LayoutEvent extends Event {
+
+        @Label("Container Class")
+        String containerClass;
+        @Label("Container Name")
+        String containerName;
+        @Label("Child Count")
+        int childCount;
+        @Label("Grid Width")
+        int gridWidth;
+        @Label("Grid Height")
+        int gridHeight;
+        @Label("View Width")
+        int viewWidth;
+        @Label("View Height")
+        int viewHeight;
+
+        void describe(KoalaLayout layout, Container parent) {
+            Insets insets = parent.getInsets();
+            containerClass = parent.getClass().getName();
+            containerName = parent.getName();
+            childCount = parent.getComponentCount();
+            gridWidth = layout.gridWidth;
+            gridHeight = layout.gridHeight;
+            viewWidth = parent.getWidth() - insets.left - insets.right;
+            viewHeight = parent.getHeight() - insets.top - insets.bottom;
+        }
+    }
+
+    @Name("net.java.dev.koalalayout.LayoutContainer")
+    @Label("Layout Container")
+    @Description("A container laid out by KoalaLayout")
+    static final class LayoutContainerEvent extends LayoutEvent {
+
+        @Label("Moved Count")
+        @Description("Number of children moved or resized")
+        int movedCount;
+    }
+
+    @Name("net.java.dev.koalalayout.PreferredLayoutSize")
+    @Label("Preferred Layout Size")
+    @Description("Preferred size of a container computed by KoalaLayout")
+    static final class PreferredLayoutSizeEvent extends LayoutEvent {
+    }
+
+    @Name("net.java.dev.koalalayout.MinimumLayoutSize")
+    @Label("Minimum Layout Size")
+    @Description("Minimum size of a container computed by KoalaLayout")
+    static final class MinimumLayoutSizeEvent extends LayoutEvent {
+    }
+}
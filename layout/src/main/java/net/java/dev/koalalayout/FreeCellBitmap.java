@@ -0,0 +1,136 @@
+/*
+ * This file is part of KoalaLayout.
+ *
+ * Koala layout is a flexible grid layout for Java Swing.
+ * Copyright (C) 2012 Peter Flukiger, Jean-Marc Borer
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.java.dev.koalalayout;
+
+import java.awt.Component;
+import java.util.BitSet;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Occupied cells of a grid flowing in one direction, used to auto-place children, see
+ * {@link KoalaLayout#setAutoFlow(KoalaLayout.AutoFlow, boolean)}. The grid has a fixed number of lanes, the columns of
+ * a row flow or the rows of a column flow, and as many tracks as needed. Cell <code>(lane, track)</code> is bit
+ * <code>track * lanes + lane</code>, so that searching the next free cell skips 64 occupied cells per step.
+ * <p>
+ * A sparse search continues after the last placed child and never goes back, a dense search starts at the first free
+ * cell. Both are amortized constant time for children of one cell.
+ */
+final class FreeCellBitmap {
+
+    final int lanes;
+    private final BitSet occupied = new BitSet();
+    /**
+     * lane, track, lane span and track span of each recorded component
+     */
+    private final Map<Component, int[]> areas = new IdentityHashMap<Component, int[]>();
+    /**
+     * where the next sparse search starts
+     */
+    private int cursor;
+    /**
+     * no cell before this one is free
+     */
+    private int firstFree;
+
+    FreeCellBitmap(int lanes) {
+        this.lanes = lanes;
+    }
+
+    /**
+     * Records the cells of a component, replacing the ones recorded before. Cells beyond the last lane are ignored.
+     */
+    void occupy(Component comp, int lane, int track, int laneSpan, int trackSpan) {
+        release(comp);
+        int span = Math.min(lane + laneSpan, lanes) - lane;
+        if (lane < 0 || track < 0 || span <= 0 || trackSpan <= 0) {
+            return;
+        }
+        areas.put(comp, new int[]{lane, track, span, trackSpan});
+        for (int t = track; t < track + trackSpan; t++) {
+            int start = t * lanes + lane;
+            occupied.set(start, start + span);
+        }
+        if (occupied.get(firstFree)) {
+            firstFree = occupied.nextClearBit(firstFree);
+        }
+    }
+
+    /**
+     * Forgets the cells of a component.
+     */
+    void release(Component comp) {
+        int[] area = areas.remove(comp);
+        if (area == null) {
+            return;
+        }
+        for (int t = area[1]; t < area[1] + area[3]; t++) {
+            int start = t * lanes + area[0];
+            occupied.clear(start, start + area[2]);
+        }
+        firstFree = Math.min(firstFree, area[1] * lanes + area[0]);
+    }
+
+    /**
+     * Finds the first free area of the given size in flow order and moves the sparse cursor past it. An area wider
+     * than the lanes is placed at the start of an empty track.
+     *
+     * @param laneSpan number of lanes of the area
+     * @param trackSpan number of tracks of the area
+     * @param dense true to search from the first free cell, false to continue after the last placed area
+     * @return the index of the top left cell of the area
+     */
+    int find(int laneSpan, int trackSpan, boolean dense) {
+        int span = Math.min(laneSpan, lanes);
+        int from = dense ? firstFree : cursor;
+        while (true) {
+            int cell = occupied.nextClearBit(from);
+            int lane = cell % lanes;
+            if (lane + span > lanes) {
+                // does not fit into the rest of the track
+                from = cell - lane + lanes;
+                continue;
+            }
+            int blocked = firstOccupied(cell, span, trackSpan);
+            if (blocked < 0) {
+                if (!dense) {
+                    cursor = cell + span;
+                }
+                return cell;
+            }
+            from = blocked + 1;
+        }
+    }
+
+    /**
+     * Returns an occupied cell of the given area, the first one of the first track having one, or -1 if the area is
+     * free.
+     */
+    private int firstOccupied(int cell, int span, int trackSpan) {
+        for (int t = 0; t < trackSpan; t++) {
+            int start = cell + t * lanes;
+            int next = occupied.nextSetBit(start);
+            if (next >= 0 && next < start + span) {
+                return t == 0 ? next : cell;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,290 @@
+/*
+ * This file is part of KoalaLayout.
+ *
+ * Koala layout is a flexible grid layout for Java Swing.
+ * Copyright (C) 2012 Peter Flukiger, Jean-Marc Borer
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.java.dev.koalalayout;
+
+import java.awt.GridBagConstraints;
+import java.awt.Insets;
+import java.io.Serializable;
+import java.lang.ref.WeakReference;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Immutable constraints of a child of a {@link KoalaLayout}. Instances are interned: equal cells are the same object,
+ * so a form with thousands of children placed alike holds one instance per distinct placement. Unlike
+ * <code>GridBagConstraints</code>, a cell is stored by the layout by reference, without copying it or its insets.
+ * <p>
+ * Cells are only reachable as long as they are used, either directly or through the layouts of the children placed
+ * in them; unused ones are dropped from the intern pool by the garbage collector.
+ *
+ * @see KoalaLayout#setConstraints(java.awt.Component, KoalaCell)
+ */
+public final class KoalaCell implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+    private static final Insets NO_INSETS = new Insets(0, 0, 0, 0);
+    /**
+     * interned cells, the values reference their key weakly so that unused cells can be collected
+     */
+    private static final Map<KoalaCell, WeakReference<KoalaCell>> POOL = new WeakHashMap<KoalaCell, WeakReference<KoalaCell>>();
+
+    private final int gridx;
+    private final int gridy;
+    private final int gridwidth;
+    private final int gridheight;
+    private final double weightx;
+    private final double weighty;
+    private final int anchor;
+    private final int fill;
+    private final int insetTop;
+    private final int insetLeft;
+    private final int insetBottom;
+    private final int insetRight;
+    private final int ipadx;
+    private final int ipady;
+    /**
+     * the constraints handed to the layouts, shared by every child placed in this cell; never modified. They reference
+     * the cell, so that it stays interned as long as a layout holds them.
+     */
+    private final transient GridBagConstraints constraints;
+
+    private KoalaCell(GridBagConstraints c) {
+        gridx = c.gridx;
+        gridy = c.gridy;
+        gridwidth = c.gridwidth;
+        gridheight = c.gridheight;
+        weightx = c.weightx;
+        weighty = c.weighty;
+        anchor = c.anchor;
+        fill = c.fill;
+        insetTop = c.insets.top;
+        insetLeft = c.insets.left;
+        insetBottom = c.insets.bottom;
+        insetRight = c.insets.right;
+        ipadx = c.ipadx;
+        ipady = c.ipady;
+        constraints = new SharedConstraints(this);
+    }
+
+    /**
+     * Returns the cell spanning the given cells, filling them in both directions, like the default constraints of
+     * {@link KoalaLayout}.
+     *
+     * @param gridx first column
+     * @param gridy first row
+     * @param gridwidth number of columns
+     * @param gridheight number of rows
+     * @return the interned cell
+     */
+    public static KoalaCell of(int gridx, int gridy, int gridwidth, int gridheight) {
+        return of(gridx, gridy, gridwidth, gridheight, GridBagConstraints.CENTER, GridBagConstraints.BOTH, NO_INSETS);
+    }
+
+    /**
+     * Returns the cell with the given placement.
+     *
+     * @param gridx first column
+     * @param gridy first row
+     * @param gridwidth number of columns
+     * @param gridheight number of rows
+     * @param anchor anchor of the child within its cells
+     * @param fill fill of the child within its cells
+     * @param insets space around the child; copied
+     * @return the interned cell
+     */
+    public static KoalaCell of(int gridx, int gridy, int gridwidth, int gridheight, int anchor, int fill,
+            Insets insets) {
+        return of(new GridBagConstraints(gridx, gridy, gridwidth, gridheight, 0.0, 0.0, anchor, fill, insets, 0, 0));
+    }
+
+    /**
+     * Returns the cell equal to the given constraints, e.g. to intern {@link KoalaConstraints}.
+     *
+     * @param constraints the constraints; copied
+     * @return the interned cell
+     */
+    public static KoalaCell of(GridBagConstraints constraints) {
+        if (constraints == null) {
+            throw new IllegalArgumentException("cannot create KoalaCell: constraints must not be null");
+        }
+        if (constraints.insets == null) {
+            throw new IllegalArgumentException("cannot create KoalaCell: insets must not be null");
+        }
+        return intern(new KoalaCell(constraints));
+    }
+
+    private static KoalaCell intern(KoalaCell cell) {
+        synchronized (POOL) {
+            WeakReference<KoalaCell> ref = POOL.get(cell);
+            KoalaCell interned = ref != null ? ref.get() : null;
+            if (interned == null) {
+                POOL.put(cell, new WeakReference<KoalaCell>(cell));
+                interned = cell;
+            }
+            return interned;
+        }
+    }
+
+    public int getGridx() {
+        return gridx;
+    }
+
+    public int getGridy() {
+        return gridy;
+    }
+
+    public int getGridwidth() {
+        return gridwidth;
+    }
+
+    public int getGridheight() {
+        return gridheight;
+    }
+
+    public double getWeightx() {
+        return weightx;
+    }
+
+    public double getWeighty() {
+        return weighty;
+    }
+
+    public int getAnchor() {
+        return anchor;
+    }
+
+    public int getFill() {
+        return fill;
+    }
+
+    /**
+     * Returns the insets of the cell.
+     *
+     * @return a copy of the insets
+     */
+    public Insets getInsets() {
+        return new Insets(insetTop, insetLeft, insetBottom, insetRight);
+    }
+
+    public int getIpadx() {
+        return ipadx;
+    }
+
+    public int getIpady() {
+        return ipady;
+    }
+
+    /**
+     * Returns new, modifiable constraints equal to this cell.
+     *
+     * @return a copy of the cell as constraints
+     */
+    public GridBagConstraints toConstraints() {
+        return new GridBagConstraints(gridx, gridy, gridwidth, gridheight, weightx, weighty, anchor, fill,
+                new Insets(insetTop, insetLeft, insetBottom, insetRight), ipadx, ipady);
+    }
+
+    /**
+     * Returns the constraints shared by all children placed in this cell. They must not be modified.
+     */
+    GridBagConstraints sharedConstraints() {
+        return constraints;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof KoalaCell)) {
+            return false;
+        }
+        KoalaCell other = (KoalaCell) obj;
+        return gridx == other.gridx && gridy == other.gridy && gridwidth == other.gridwidth
+                && gridheight == other.gridheight && anchor == other.anchor && fill == other.fill
+                && insetTop == other.insetTop && insetLeft == other.insetLeft && insetBottom == other.insetBottom
+                && insetRight == other.insetRight && ipadx == other.ipadx && ipady == other.ipady
+                && Double.doubleToLongBits(weightx) == Double.doubleToLongBits(other.weightx)
+                && Double.doubleToLongBits(weighty) == Double.doubleToLongBits(other.weighty);
+    }
+
+    @Override
+    public int hashCode() {
+        int hash = gridx;
+        hash = 31 * hash + gridy;
+        hash = 31 * hash + gridwidth;
+        hash = 31 * hash + gridheight;
+        hash = 31 * hash + anchor;
+        hash = 31 * hash + fill;
+        hash = 31 * hash + insetTop;
+        hash = 31 * hash + insetLeft;
+        hash = 31 * hash + insetBottom;
+        hash = 31 * hash + insetRight;
+        hash = 31 * hash + ipadx;
+        hash = 31 * hash + ipady;
+        long bits = Double.doubleToLongBits(weightx);
+        hash = 31 * hash + (int) (bits ^ (bits >>> 32));
+        bits = Double.doubleToLongBits(weighty);
+        return 31 * hash + (int) (bits ^ (bits >>> 32));
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getName() + "[gridx=" + gridx + ",gridy=" + gridy + ",gridwidth=" + gridwidth
+                + ",gridheight=" + gridheight + ",anchor=" + anchor + ",fill=" + fill + ",insets=" + getInsets() + "]";
+    }
+
+    /**
+     * Interns deserialized cells, which also restores their shared constraints.
+     */
+    private Object readResolve() {
+        return of(toConstraints());
+    }
+
+    /**
+     * The constraints shared by the children placed in a cell, keeping the cell reachable.
+     */
+    private static final class SharedConstraints extends GridBagConstraints {
+
+        private static final long serialVersionUID = 1L;
+        private final KoalaCell cell;
+
+        SharedConstraints(KoalaCell cell) {
+            super(cell.gridx, cell.gridy, cell.gridwidth, cell.gridheight, cell.weightx, cell.weighty, cell.anchor,
+                    cell.fill, cell.getInsets(), cell.ipadx, cell.ipady);
+            this.cell = cell;
+        }
+
+        /**
+         * Returns modifiable constraints not tied to the cell.
+         */
+        @Override
+        public Object clone() {
+            return cell.toConstraints();
+        }
+
+        /**
+         * Shares the constraints of the interned cell again after deserialization.
+         */
+        private Object readResolve() {
+            return cell.sharedConstraints();
+        }
+    }
+}
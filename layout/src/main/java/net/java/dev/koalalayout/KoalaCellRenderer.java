@@ -0,0 +1,54 @@
+/*
+ * This file is part of KoalaLayout.
+ *
+ * Koala layout is a flexible grid layout for Java Swing.
+ * Copyright (C) 2012 Peter Flukiger, Jean-Marc Borer
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.java.dev.koalalayout;
+
+import java.awt.Component;
+
+/**
+ * Supplies the components shown in the visible cells of a {@link KoalaVirtualGrid}.
+ */
+public interface KoalaCellRenderer {
+
+    /**
+     * Returns the component showing the given cell. Implementations should configure and return the recycled
+     * component when it is not <code>null</code>, so that only as many components exist as cells are visible.
+     *
+     * @param grid the grid asking for the component
+     * @param recycled a component no longer used by another cell, or <code>null</code>
+     * @param column column of the cell
+     * @param row row of the cell
+     * @return the component to show in the cell
+     */
+    Component getCellComponent(KoalaVirtualGrid grid, Component recycled, int column, int row);
+
+    /**
+     * Returns the area covered by the component of the given cell and how the component is placed in it. All cells of
+     * an area must return the same area; only its first cell is asked for a component. By default every cell has a
+     * component of its own filling it.
+     *
+     * @param grid the grid asking for the area
+     * @param column column of the cell
+     * @param row row of the cell
+     * @return the area containing the cell
+     */
+    default KoalaCell getCellArea(KoalaVirtualGrid grid, int column, int row) {
+        return KoalaCell.of(column, row, 1, 1);
+    }
+}
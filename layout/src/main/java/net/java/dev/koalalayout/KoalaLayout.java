@@ -22,6 +22,8 @@ package net.java.dev.koalalayout;
 import java.awt.*;
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import javax.swing.JComponent;
 
 /**
  *
@@ -30,18 +32,175 @@ import java.util.*;
  */
 public class KoalaLayout implements LayoutManager2, Serializable {
 
+    /**
+     * Direction in which children without a position are placed, see {@link #setAutoFlow(AutoFlow, boolean)}
+     */
+    public enum AutoFlow {
+
+        /**
+         * children without a position are laid out at their <code>RELATIVE</code> or default cells
+         */
+        NONE,
+        /**
+         * children fill the columns of the configured grid width row by row
+         */
+        ROW,
+        /**
+         * children fill the rows of the configured grid height column by column
+         */
+        COLUMN
+    }
+
+    /**
+     * The value computed for the first release, which declared none, so that layouts serialized by it can still be read
+     */
+    private static final long serialVersionUID = -828556662255085036L;
     /**
      * Just for NetBeans module debugging (switch boolean to log or not)
      */
     private static final boolean LOGGABLE = false;
     /**
-     * associates components with their constraints
-     *
+     * Updates the constraints table atomically
      */
-    protected Map<Component, GridBagConstraints> componentTable;
+    @SuppressWarnings("rawtypes")
+    private static final AtomicReferenceFieldUpdater<KoalaLayout, Map> TABLE_UPDATER
+            = AtomicReferenceFieldUpdater.newUpdater(KoalaLayout.class, Map.class, "componentTable");
+    /**
+     * associates components with their constraints. The table is an immutable snapshot, every change publishes a
+     * new one sharing the unchanged entries, so that it can be read and replaced from any thread without locking.
+     * <p>
+     * Subclasses written when the table was a mutable hash table must not modify it in place any more: doing so throws
+     * an <code>UnsupportedOperationException</code>. They use {@link #putConstraints(Component, GridBagConstraints)}
+     * and {@link #dropConstraints(Component)} instead.
+     */
+    protected volatile Map<Component, GridBagConstraints> componentTable;
     protected GridBagConstraints defaultConstraints;
     protected int gridWidth;
     protected int gridHeight;
+    /**
+     * Grid dimensions as configured, before growing to the cells used by the children, see
+     * {@link #setAutoShrink(boolean)}
+     */
+    private int configuredGridWidth;
+    private int configuredGridHeight;
+    /**
+     * True if the grid shrinks back to its configured dimensions when children outside of them are removed
+     */
+    private boolean autoShrink;
+    /**
+     * How children without a position are placed
+     */
+    private AutoFlow autoFlow = AutoFlow.NONE;
+    private boolean autoFlowDense;
+    /**
+     * Shared constraints of the children, <code>null</code> if every child has its own
+     */
+    private KoalaLayoutTemplate template;
+    /**
+     * True if layout passes run on a kernel specialized for the plan, see {@link #setSpecialized(boolean)}
+     */
+    private boolean specialized;
+    /**
+     * Container for which the cached sizes below were computed
+     */
+    private transient Container sizeCacheTarget;
+    private transient Dimension cachedPreferredSize;
+    private transient Dimension cachedMinimumSize;
+    /**
+     * Pixel offsets of the column and row edges, reused from one layout pass to the next
+     */
+    private transient int[] columnEdges;
+    private transient int[] rowEdges;
+    /**
+     * Buffers for edges computed by this layout, the edges above may be shared with a template
+     */
+    private transient int[] columnEdgeBuffer;
+    private transient int[] rowEdgeBuffer;
+    /**
+     * Number of cells and view length the edge buffers hold the edges of, a new plan on the same grid and view reuses
+     * them
+     */
+    private transient int columnEdgeCells;
+    private transient int columnEdgeLength;
+    private transient int rowEdgeCells;
+    private transient int rowEdgeLength;
+    private transient Insets insetsBuffer;
+    /**
+     * Children of the aligned container in container order and their constraints at the same index, so that the hot
+     * passes need no hash lookup. Kept in sync by add and remove, rebuilt from the table when out of sync.
+     */
+    private transient Container alignedParent;
+    /**
+     * Constraints table the aligned arrays and the cached sizes were derived from. When another snapshot was published
+     * since, e.g. by a background thread, the next pass aligns the children again.
+     */
+    private transient Map<Component, GridBagConstraints> alignedTable;
+    private transient Component[] alignedComponents;
+    private transient GridBagConstraints[] alignedConstraints;
+    private transient int alignedCount;
+    /**
+     * Constraints of the children resolved by the last layout pass, see {@link #getPlan(Container)}
+     */
+    private transient KoalaLayoutPlan plan;
+    /**
+     * Modification count the plan is valid for
+     */
+    private transient int planModCount;
+    /**
+     * Plan specialized by the last layout pass in specialized mode
+     */
+    private transient KoalaLayoutKernel kernel;
+    /**
+     * Container, plan, view and child bounds (x, y, width, height per child) of the last layout pass. When only one
+     * axis of the view changes, the next pass recomputes that axis only. A template plan is shared by every container
+     * following the template, so the container is part of the key.
+     */
+    private transient Container laidOutParent;
+    private transient KoalaLayoutPlan laidOutPlan;
+    private transient int[] laidOutBounds;
+    private transient int lastViewX;
+    private transient int lastViewY;
+    private transient int lastViewWidth;
+    private transient int lastViewHeight;
+    /**
+     * Number of children moved or resized by the last layout pass
+     */
+    private transient int movedCount;
+    /**
+     * Number of children looked at by the last layout pass, zero if it returned early
+     */
+    private transient int processedCount;
+    /**
+     * Incremented whenever constraints, children or grid dimensions change, tells whether the plan is still up to date
+     */
+    private transient int modCount;
+    /**
+     * Cells occupied by the children of the aligned container, see {@link #getOccupancy(Container)}
+     */
+    private transient CellOccupancyIndex occupancy;
+    /**
+     * Metrics of this layout alone, see {@link KoalaLayoutMetrics#register(KoalaLayout, String)}
+     */
+    transient KoalaLayoutMetrics metrics;
+    /**
+     * Container whose children are being changed between {@link #beginUpdate(Container)} and
+     * {@link #commitUpdate(Container)}, and the nesting depth of these calls
+     */
+    private transient Container updatingParent;
+    private transient Thread updatingThread;
+    /**
+     * constraints changed by the thread updating the container during a batch, published as one new snapshot by the
+     * outermost commit; a <code>null</code> value removes the constraints of its component
+     */
+    private transient IdentityHashMap<Component, GridBagConstraints> pendingConstraints;
+    private transient int updateDepth;
+    /**
+     * Cells occupied by the children of a container in auto flow mode, and the constraints table they were recorded
+     * from. Rebuilt when another table was published since.
+     */
+    private transient FreeCellBitmap flow;
+    private transient Container flowParent;
+    private transient Map<Component, GridBagConstraints> flowTable;
 
     private void netbeansLog(String msg) {
         if (LOGGABLE) {
@@ -67,7 +226,7 @@ public class KoalaLayout implements LayoutManager2, Serializable {
         if (gridWidth <= 0 || gridHeight <= 0) {
             throw new IllegalArgumentException("cannot create KoalaLayout: width and height must be positive");
         }
-        componentTable = new HashMap<Component, GridBagConstraints>();
+        componentTable = ConstraintsTable.EMPTY;
         defaultConstraints = new GridBagConstraints();
         defaultConstraints.gridx = 0;
         defaultConstraints.gridy = 0;
@@ -78,11 +237,24 @@ public class KoalaLayout implements LayoutManager2, Serializable {
 
         this.gridWidth = gridWidth;
         this.gridHeight = gridHeight;
+        this.configuredGridWidth = gridWidth;
+        this.configuredGridHeight = gridHeight;
         netbeansLog("creating koalalayout with width=" + gridWidth + ", height=" + gridHeight);
         netbeansLog("ThisClass from: " + KoalaLayout.class.getClassLoader());
         netbeansLog("----------------");
     }
 
+    /**
+     * Creates a new KoalaLayout whose children are laid out with the constraints of a shared template, child
+     * <code>i</code> with constraints <code>i</code>. Children are added without constraints.
+     *
+     * @param template the shared constraints
+     */
+    public KoalaLayout(KoalaLayoutTemplate template) {
+        this(template.getPlan().getGridWidth(), template.getPlan().getGridHeight());
+        this.template = template;
+    }
+
     /**
      * Sets the constraints for the specified component in this layout.
      *
@@ -90,8 +262,216 @@ public class KoalaLayout implements LayoutManager2, Serializable {
      * @param constraints the constraints to be applied.
      */
     public void setConstraints(Component comp, GridBagConstraints constraints) {
-        constraints = (GridBagConstraints) constraints.clone(); // make local copy
-        componentTable.put(comp, constraints);
+        storeConstraints(comp, (GridBagConstraints) constraints.clone()); // make local copy
+    }
+
+    /**
+     * Sets the constraints for the specified component in this layout. Cells are immutable, the layout keeps a
+     * reference to the cell's constraints instead of a copy, so that all children placed alike share them.
+     *
+     * @param comp the component to be modified.
+     * @param cell the cell of the component.
+     */
+    public void setConstraints(Component comp, KoalaCell cell) {
+        storeConstraints(comp, cell.sharedConstraints());
+    }
+
+    /**
+     * Sets the constraints of a component without copying them, like putting them into the constraints table did
+     * before it became an immutable snapshot.
+     *
+     * @param comp the component to be modified
+     * @param constraints the constraints to be applied; kept by reference
+     */
+    protected void putConstraints(Component comp, GridBagConstraints constraints) {
+        if (comp == null || constraints == null) {
+            throw new IllegalArgumentException("cannot put constraints: component and constraints must not be null");
+        }
+        storeConstraints(comp, constraints);
+    }
+
+    /**
+     * Removes the constraints of a component, like removing them from the constraints table did before it became an
+     * immutable snapshot. The component, if still a child, falls back to the template or default constraints.
+     *
+     * @param comp the component to be modified
+     */
+    protected void dropConstraints(Component comp) {
+        publishPendingConstraints();
+        Map<Component, GridBagConstraints> previous;
+        Map<Component, GridBagConstraints> next;
+        do {
+            previous = componentTable;
+            if (!previous.containsKey(comp)) {
+                return;
+            }
+            next = ConstraintsTable.of(previous).without(comp);
+        } while (!TABLE_UPDATER.compareAndSet(this, previous, next));
+        // the next pass sees the new snapshot and aligns the children again
+    }
+
+    private void storeConstraints(Component comp, GridBagConstraints constraints) {
+        boolean deferred = updateDepth > 0 && ownsPendingConstraints(comp);
+        Map<Component, GridBagConstraints> previous;
+        Map<Component, GridBagConstraints> next;
+        if (deferred) {
+            // published with the other changes of the batch, the table stays the same until then
+            deferConstraints(comp, constraints);
+            previous = componentTable;
+            next = previous;
+        } else {
+            do {
+                previous = componentTable;
+                next = ConstraintsTable.of(previous).with(comp, constraints);
+            } while (!TABLE_UPDATER.compareAndSet(this, previous, next));
+        }
+        if (!deferred && !ownsAlignment(comp)) {
+            // the next pass sees the new snapshot and aligns the children again
+            return;
+        }
+        modCount++;
+        flushSizeCache();
+
+        if (flow != null && flowTable == previous) {
+            flowTable = next;
+            if (comp.getParent() == flowParent) {
+                flowOccupy(comp, constraints);
+            }
+        }
+        if (alignedTable == previous) {
+            alignedTable = next;
+            int index = indexOfAligned(comp);
+            if (index >= 0) {
+                alignedConstraints[index] = constraints;
+                updateOccupancy(comp, constraints);
+            }
+        }
+    }
+
+    /**
+     * Sets the constraints of many components at once, see {@link #replaceConstraints(Map)}. Components missing from
+     * the map keep their constraints.
+     *
+     * @param constraints the constraints of each component, a <code>GridBagConstraints</code> or a {@link KoalaCell}
+     */
+    public void setConstraints(Map<Component, ?> constraints) {
+        publishConstraints(constraints, false);
+    }
+
+    /**
+     * Replaces the constraints of all components by the given ones in one atomic step. Components missing from the
+     * map get the template or the default constraints. This method may be called from any thread without taking the
+     * tree lock: a constraint set can be prepared in the background and swapped in while the event dispatch thread
+     * keeps laying out the previous one. The container must be revalidated afterwards on the event dispatch thread;
+     * layout passes always see either the complete old or the complete new set.
+     *
+     * @param constraints the constraints of each component, a <code>GridBagConstraints</code> or a {@link KoalaCell}
+     */
+    public void replaceConstraints(Map<Component, ?> constraints) {
+        publishConstraints(constraints, true);
+    }
+
+    /**
+     * Returns the current constraints of all components with explicitly set constraints. The snapshot is immutable
+     * and stays consistent while other threads change constraints; its values must not be modified.
+     *
+     * @return an unmodifiable snapshot of the constraints table
+     */
+    public Map<Component, GridBagConstraints> getConstraintsSnapshot() {
+        publishPendingConstraints();
+        return Collections.unmodifiableMap(componentTable);
+    }
+
+    private void publishConstraints(Map<Component, ?> constraints, boolean replace) {
+        publishPendingConstraints();
+        Map<Component, GridBagConstraints> converted = new IdentityHashMap<Component, GridBagConstraints>();
+        for (Map.Entry<Component, ?> entry : constraints.entrySet()) {
+            Object value = entry.getValue();
+            if (value instanceof KoalaCell) {
+                converted.put(entry.getKey(), ((KoalaCell) value).sharedConstraints());
+            } else if (value instanceof GridBagConstraints) {
+                converted.put(entry.getKey(), (GridBagConstraints) ((GridBagConstraints) value).clone());
+            } else {
+                throw new IllegalArgumentException("cannot set constraints: constraint must be a GridBagConstraints or a KoalaCell");
+            }
+        }
+        Map<Component, GridBagConstraints> previous;
+        Map<Component, GridBagConstraints> next;
+        do {
+            previous = componentTable;
+            next = replace ? ConstraintsTable.of(converted) : ConstraintsTable.of(previous).withAll(converted);
+        } while (!TABLE_UPDATER.compareAndSet(this, previous, next));
+    }
+
+    /**
+     * Tells whether the current thread may update the aligned arrays, i.e. whether it is the thread laying out the
+     * container. Other threads only publish a new constraints table.
+     */
+    private static boolean ownsAlignment(Component comp) {
+        return EventQueue.isDispatchThread() || Thread.holdsLock(comp.getTreeLock());
+    }
+
+    /**
+     * Tells whether the current thread sees the changes deferred by a batch: the thread which began it, and the
+     * threads owning the aligned arrays.
+     */
+    private boolean ownsPendingConstraints(Component comp) {
+        return Thread.currentThread() == updatingThread || ownsAlignment(comp);
+    }
+
+    /**
+     * Records a change made during a batch, see {@link #beginUpdate(Container)}. Copying the table for every single
+     * add would cost <i>O(n<sup>2</sup>)</i> for <i>n</i> children.
+     *
+     * @param comp the changed component
+     * @param constraints its new constraints, <code>null</code> to remove them
+     */
+    private void deferConstraints(Component comp, GridBagConstraints constraints) {
+        if (pendingConstraints == null) {
+            pendingConstraints = new IdentityHashMap<Component, GridBagConstraints>();
+        }
+        pendingConstraints.put(comp, constraints);
+    }
+
+    /**
+     * Publishes the changes deferred by the current batch as one new snapshot. Only the threads updating the
+     * container see them before, other threads leave them alone.
+     */
+    private void publishPendingConstraints() {
+        IdentityHashMap<Component, GridBagConstraints> pending = pendingConstraints;
+        Container parent = updatingParent;
+        if (pending == null || parent == null || !ownsPendingConstraints(parent)) {
+            return;
+        }
+        pendingConstraints = null;
+        Map<Component, GridBagConstraints> previous;
+        Map<Component, GridBagConstraints> next;
+        do {
+            previous = componentTable;
+            next = ConstraintsTable.of(previous).withAll(pending);
+        } while (!TABLE_UPDATER.compareAndSet(this, previous, next));
+        // the aligned arrays and the auto flow already follow the deferred changes
+        if (flowTable == previous) {
+            flowTable = next;
+        }
+        if (alignedTable == previous) {
+            alignedTable = next;
+        }
+    }
+
+    /**
+     * Returns the explicitly set constraints of a component, including the changes deferred by a batch of the current
+     * thread.
+     *
+     * @param comp the component to be queried
+     * @return its constraints, <code>null</code> if none are set
+     */
+    private GridBagConstraints storedConstraints(Component comp) {
+        IdentityHashMap<Component, GridBagConstraints> pending = pendingConstraints;
+        if (pending != null && ownsPendingConstraints(comp) && pending.containsKey(comp)) {
+            return pending.get(comp);
+        }
+        return componentTable.get(comp);
     }
 
     /**
@@ -103,26 +483,33 @@ public class KoalaLayout implements LayoutManager2, Serializable {
      * object is returned.
      */
     public GridBagConstraints getConstraints(Component comp) {
-        GridBagConstraints constraints = (GridBagConstraints) componentTable.get(comp);
+        GridBagConstraints constraints = storedConstraints(comp);
+        if (constraints == null) {
+            constraints = templateConstraintsFor(comp);
+        }
         if (constraints == null) {
             setConstraints(comp, defaultConstraints);
-            constraints = (GridBagConstraints) componentTable.get(comp);
+            constraints = storedConstraints(comp);
         }
         return (GridBagConstraints) constraints.clone();
     }
 
     /**
      * Retrieves the constraints for the specified component. The return value is not a copy, but is the actual
-     * <code>GridBagConstraints</code> object used by the layout mechanism.
+     * <code>GridBagConstraints</code> object used by the layout mechanism. Constraints set from a {@link KoalaCell}
+     * are shared with other components and must not be modified.
      *
      * @param comp the component to be queried
      * @return the constraints for the specified component.
      */
     protected GridBagConstraints lookupConstraints(Component comp) {
-        GridBagConstraints constraints = (GridBagConstraints) componentTable.get(comp);
+        GridBagConstraints constraints = storedConstraints(comp);
+        if (constraints == null) {
+            constraints = templateConstraintsFor(comp);
+        }
         if (constraints == null) {
             setConstraints(comp, defaultConstraints);
-            constraints = (GridBagConstraints) componentTable.get(comp);
+            constraints = storedConstraints(comp);
         }
         return constraints;
     }
@@ -133,7 +520,236 @@ public class KoalaLayout implements LayoutManager2, Serializable {
      * @param comp the component to be modified.
      */
     private void removeConstraints(Component comp) {
-        componentTable.remove(comp);
+        Map<Component, GridBagConstraints> previous;
+        Map<Component, GridBagConstraints> next;
+        if (updateDepth > 0 && ownsPendingConstraints(comp)) {
+            if (storedConstraints(comp) != null) {
+                deferConstraints(comp, null);
+            }
+            previous = componentTable;
+            next = previous;
+        } else {
+            do {
+                previous = componentTable;
+                if (!previous.containsKey(comp)) {
+                    next = previous;
+                    break;
+                }
+                next = ConstraintsTable.of(previous).without(comp);
+            } while (!TABLE_UPDATER.compareAndSet(this, previous, next));
+        }
+        modCount++;
+        flushSizeCache();
+        if (flow != null) {
+            flow.release(comp);
+            if (flowTable == previous) {
+                flowTable = next;
+            }
+        }
+        if (alignedTable == previous) {
+            alignedTable = next;
+        }
+
+        int index = indexOfAligned(comp);
+        if (index >= 0 && template != null && index < alignedCount - 1) {
+            // the following children move to other template constraints
+            alignedParent = null;
+            occupancy = null;
+        } else if (index >= 0) {
+            if (occupancy != null && occupancy.incremental) {
+                occupancy.remove(comp);
+            } else {
+                occupancy = null;
+            }
+            int moved = alignedCount - index - 1;
+            System.arraycopy(alignedComponents, index + 1, alignedComponents, index, moved);
+            System.arraycopy(alignedConstraints, index + 1, alignedConstraints, index, moved);
+            alignedCount--;
+            alignedComponents[alignedCount] = null;
+            alignedConstraints[alignedCount] = null;
+        }
+    }
+
+    /**
+     * Returns the constraints used to lay out the given component without registering defaults in the table.
+     *
+     * @param table the constraints table
+     * @param comp the component to be queried
+     * @param index index of the component in its container
+     * @return the stored constraints, the ones of the template or the default ones
+     */
+    private GridBagConstraints constraintsFor(Map<Component, GridBagConstraints> table, Component comp, int index) {
+        // the current table includes the changes deferred by a batch
+        GridBagConstraints constraints = table == componentTable ? storedConstraints(comp) : table.get(comp);
+        if (constraints != null) {
+            return constraints;
+        }
+        if (template != null && index >= 0 && index < template.size()) {
+            return template.constraintsAt(index);
+        }
+        return defaultConstraints;
+    }
+
+    /**
+     * Returns the template constraints of a child of a container using this layout.
+     *
+     * @param comp the component to be queried
+     * @return the shared constraints, or <code>null</code> if there are none
+     */
+    private GridBagConstraints templateConstraintsFor(Component comp) {
+        Container parent = comp.getParent();
+        if (template == null || parent == null || parent.getLayout() != this) {
+            return null;
+        }
+        int index = parent.getComponentZOrder(comp);
+        return index >= 0 && index < template.size() ? template.constraintsAt(index) : null;
+    }
+
+    /**
+     * Returns the index of the component in the aligned arrays. The search starts at the end since components are
+     * mostly appended.
+     *
+     * @param comp the component to look for
+     * @return its index or -1 if it is not part of the aligned container
+     */
+    private int indexOfAligned(Component comp) {
+        if (alignedParent == null) {
+            return -1;
+        }
+        for (int i = alignedCount - 1; i >= 0; i--) {
+            if (alignedComponents[i] == comp) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Inserts a component that has just been added to its container into the aligned arrays. When its position cannot
+     * be determined, or when it is inserted before other children taking their constraints from the template, the
+     * arrays are dropped and rebuilt by the next pass.
+     *
+     * @param comp the added component
+     */
+    private void alignAdded(Component comp) {
+        Container parent = comp.getParent();
+        if (parent == null || parent != alignedParent) {
+            return;
+        }
+        int count = parent.getComponentCount();
+        int index = count > 0 && parent.getComponent(count - 1) == comp ? count - 1 : parent.getComponentZOrder(comp);
+        if (count != alignedCount + 1 || index < 0 || (template != null && index < alignedCount)) {
+            // unless appended, the following children move to other template constraints
+            alignedParent = null;
+            return;
+        }
+        if (alignedCount == alignedComponents.length) {
+            int capacity = Math.max(16, alignedCount * 2);
+            alignedComponents = Arrays.copyOf(alignedComponents, capacity);
+            alignedConstraints = Arrays.copyOf(alignedConstraints, capacity);
+        }
+        int moved = alignedCount - index;
+        System.arraycopy(alignedComponents, index, alignedComponents, index + 1, moved);
+        System.arraycopy(alignedConstraints, index, alignedConstraints, index + 1, moved);
+        alignedComponents[index] = comp;
+        alignedConstraints[index] = constraintsFor(alignedTable, comp, index);
+        alignedCount++;
+        modCount++;
+        updateOccupancy(comp, alignedConstraints[index]);
+    }
+
+    /**
+     * Makes sure the aligned arrays hold the children of the given container in their current order. Checking costs
+     * one reference comparison per child; a full rebuild from the table is only needed when the arrays belong to
+     * another container or the children were reordered behind the back of the layout.
+     *
+     * @param parent the container to be laid out
+     */
+    private void alignConstraints(Container parent) {
+        if (isAligned(parent)) {
+            return;
+        }
+        Map<Component, GridBagConstraints> table = componentTable;
+        int count = parent.getComponentCount();
+        alignedComponents = parent.getComponents();
+        alignedConstraints = new GridBagConstraints[count];
+        for (int i = 0; i < count; i++) {
+            alignedConstraints[i] = constraintsFor(table, alignedComponents[i], i);
+        }
+        alignedTable = table;
+        alignedCount = count;
+        alignedParent = parent;
+        modCount++;
+        occupancy = null;
+    }
+
+    /**
+     * Moves a child of the aligned container to the cells of its new constraints in the occupancy index. When the
+     * cells of other children may depend on it, or when the grid has to grow, the index is dropped and rebuilt by the
+     * next query instead.
+     *
+     * @param comp the child whose constraints changed
+     * @param constraints its new constraints
+     */
+    private void updateOccupancy(Component comp, GridBagConstraints constraints) {
+        if (occupancy == null) {
+            return;
+        }
+        if (occupancy.incremental && isAbsolute(constraints)
+                && occupancy.contains(constraints.gridx, constraints.gridy, constraints.gridwidth, constraints.gridheight)) {
+            occupancy.put(comp, constraints.gridx, constraints.gridy, constraints.gridwidth, constraints.gridheight);
+        } else {
+            occupancy = null;
+        }
+    }
+
+    /**
+     * Tells whether the cells of the given constraints are known without looking at other children, i.e. whether
+     * they use neither <code>RELATIVE</code> nor <code>REMAINDER</code>.
+     */
+    private static boolean isAbsolute(GridBagConstraints c) {
+        return c.gridx >= 0 && c.gridy >= 0 && c.gridwidth > 0 && c.gridheight > 0;
+    }
+
+    /**
+     * Tells whether the aligned arrays hold the children of the given container in their current order.
+     *
+     * @param parent the container to be laid out
+     * @return true if the arrays are up to date
+     */
+    private boolean isAligned(Container parent) {
+        int count = parent.getComponentCount();
+        if (alignedParent != parent || alignedCount != count || alignedTable != componentTable) {
+            return false;
+        }
+        for (int i = 0; i < count; i++) {
+            if (alignedComponents[i] != parent.getComponent(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Discards the cached minimum and preferred sizes. They are recomputed on the next request.
+     */
+    private void flushSizeCache() {
+        sizeCacheTarget = null;
+        cachedPreferredSize = null;
+        cachedMinimumSize = null;
+    }
+
+    /**
+     * Makes sure the size cache belongs to the given container. A layout shared by several containers keeps the
+     * sizes of the last one asking only.
+     *
+     * @param target the container whose sizes are requested
+     */
+    private void bindSizeCache(Container target) {
+        if (sizeCacheTarget != target || alignedTable != componentTable) {
+            flushSizeCache();
+            sizeCacheTarget = target;
+        }
     }
 
     /**
@@ -151,10 +767,12 @@ public class KoalaLayout implements LayoutManager2, Serializable {
 
     /**
      * Invalidates the layout, indicating that if the layout manager has cached information it should be discarded.
+     * The cached minimum and preferred sizes are dropped here.
      */
     @Override
     public void invalidateLayout(Container target) {
-        // Nothing to do here
+        KoalaLayoutStormDetector.record(target, KoalaLayoutStormDetector.Kind.INVALIDATION);
+        flushSizeCache();
     }
 
     /**
@@ -178,10 +796,138 @@ public class KoalaLayout implements LayoutManager2, Serializable {
      */
     @Override
     public void addLayoutComponent(Component comp, Object constraints) {
-        if (constraints instanceof GridBagConstraints) {
-            setConstraints(comp, (GridBagConstraints) constraints);
+        if (constraints != null && !(constraints instanceof GridBagConstraints) && !(constraints instanceof KoalaCell)) {
+            throw new IllegalArgumentException("cannot add to layout: constraint must be a GridBagConstraints or a KoalaCell");
+        }
+        if (autoFlow != null && autoFlow != AutoFlow.NONE && comp.getParent() != null && isUnplaced(comp, constraints)) {
+            constraints = place(comp, constraints);
+        }
+        alignAdded(comp);
+        if (constraints instanceof KoalaCell) {
+            setConstraints(comp, (KoalaCell) constraints);
         } else if (constraints != null) {
-            throw new IllegalArgumentException("cannot add to layout: constraint must be a GridBagConstraints");
+            setConstraints(comp, (GridBagConstraints) constraints);
+        } else {
+            flushSizeCache();
+            if (flow != null && flowParent == comp.getParent() && flowTable == componentTable) {
+                // laid out with the default or template constraints, which are not in the table
+                flowOccupy(comp, constraintsFor(componentTable, comp, flowParent.getComponentZOrder(comp)));
+            }
+        }
+    }
+
+    /**
+     * Places children added without a position at the next free cells of the configured grid. With a row flow the
+     * children fill the columns of the configured grid width row by row, with a column flow the rows of the configured
+     * grid height column by column. A sparse flow continues after the last placed child, a dense flow fills the first
+     * hole large enough, e.g. the cells of a removed child.
+     * <p>
+     * Auto placed are the children added without constraints and without explicitly set ones, and the children added
+     * with constraints whose <code>gridx</code> and <code>gridy</code> are both <code>RELATIVE</code>. Their position
+     * is chosen once, when they are added, and stored in their constraints; a <code>RELATIVE</code> or
+     * <code>REMAINDER</code> span counts as one cell. Children with explicit cells are never overlapped. A free cell
+     * is found in amortized constant time for children spanning one cell, whatever the number of children.
+     *
+     * @param autoFlow the flow direction, {@link AutoFlow#NONE} to turn auto placement off
+     * @param dense true to fill holes left before the last placed child
+     */
+    public void setAutoFlow(AutoFlow autoFlow, boolean dense) {
+        if (autoFlow == null) {
+            throw new IllegalArgumentException("cannot set auto flow: flow must not be null");
+        }
+        this.autoFlow = autoFlow;
+        this.autoFlowDense = dense;
+        flow = null;
+        flowParent = null;
+    }
+
+    public AutoFlow getAutoFlow() {
+        return autoFlow != null ? autoFlow : AutoFlow.NONE;
+    }
+
+    public boolean isAutoFlowDense() {
+        return autoFlowDense;
+    }
+
+    /**
+     * Tells whether a child being added has no position of its own and must be auto placed.
+     */
+    private boolean isUnplaced(Component comp, Object constraints) {
+        if (constraints == null) {
+            return storedConstraints(comp) == null;
+        }
+        if (constraints instanceof KoalaCell) {
+            KoalaCell cell = (KoalaCell) constraints;
+            return cell.getGridx() == GridBagConstraints.RELATIVE && cell.getGridy() == GridBagConstraints.RELATIVE;
+        }
+        GridBagConstraints c = (GridBagConstraints) constraints;
+        return c.gridx == GridBagConstraints.RELATIVE && c.gridy == GridBagConstraints.RELATIVE;
+    }
+
+    /**
+     * Chooses the cells of a child added without a position.
+     *
+     * @param comp the child, already part of its container
+     * @param constraints its constraints, may be <code>null</code>
+     * @return its constraints with the chosen position, a cell if a cell was given
+     */
+    private Object place(Component comp, Object constraints) {
+        GridBagConstraints c;
+        if (constraints instanceof KoalaCell) {
+            c = ((KoalaCell) constraints).toConstraints();
+        } else {
+            c = (GridBagConstraints) (constraints != null ? (GridBagConstraints) constraints : defaultConstraints).clone();
+        }
+        c.gridwidth = Math.max(1, c.gridwidth);
+        c.gridheight = Math.max(1, c.gridheight);
+        boolean rows = autoFlow == AutoFlow.ROW;
+        FreeCellBitmap bitmap = getFlow(comp.getParent(), comp);
+        int cell = bitmap.find(rows ? c.gridwidth : c.gridheight, rows ? c.gridheight : c.gridwidth, autoFlowDense);
+        int lane = cell % bitmap.lanes;
+        int track = cell / bitmap.lanes;
+        c.gridx = rows ? lane : track;
+        c.gridy = rows ? track : lane;
+        return constraints instanceof KoalaCell ? KoalaCell.of(c) : c;
+    }
+
+    /**
+     * Returns the occupied cells of the given container, recording all children but the one being placed when the
+     * cells are not known yet.
+     */
+    private FreeCellBitmap getFlow(Container parent, Component placed) {
+        Map<Component, GridBagConstraints> table = componentTable;
+        if (flow != null && flowParent == parent && flowTable == table) {
+            return flow;
+        }
+        int lanes = autoFlow == AutoFlow.ROW ? configuredGridWidth : configuredGridHeight;
+        if (lanes <= 0) {
+            // layouts serialized before the configured dimensions were kept
+            lanes = autoFlow == AutoFlow.ROW ? gridWidth : gridHeight;
+        }
+        flow = new FreeCellBitmap(Math.max(1, lanes));
+        flowParent = parent;
+        flowTable = table;
+        int count = parent.getComponentCount();
+        for (int i = 0; i < count; i++) {
+            Component child = parent.getComponent(i);
+            if (child != placed) {
+                flowOccupy(child, constraintsFor(table, child, i));
+            }
+        }
+        return flow;
+    }
+
+    /**
+     * Records the cells of a child in the auto flow bitmap. Children whose cells depend on other children are not
+     * recorded.
+     */
+    private void flowOccupy(Component comp, GridBagConstraints c) {
+        if (!isAbsolute(c)) {
+            flow.release(comp);
+        } else if (autoFlow == AutoFlow.ROW) {
+            flow.occupy(comp, c.gridx, c.gridy, c.gridwidth, c.gridheight);
+        } else {
+            flow.occupy(comp, c.gridy, c.gridx, c.gridheight, c.gridwidth);
         }
     }
 
@@ -200,6 +946,8 @@ public class KoalaLayout implements LayoutManager2, Serializable {
      * <code>target</code> container using this KoalaLayout.
      * <p>
      * Most applications do not call this method directly.
+     * <p>
+     * The result is cached until the layout is invalidated or its constraints or grid dimensions change.
      *
      * @return preferred size of the component that uses this layout
      * @param parent the container in which to do the layout.
@@ -207,13 +955,32 @@ public class KoalaLayout implements LayoutManager2, Serializable {
      */
     @Override
     public Dimension preferredLayoutSize(Container parent) {
+        KoalaLayoutStormDetector.record(parent, KoalaLayoutStormDetector.Kind.PREFERRED_SIZE);
+        long start = KoalaLayoutMetrics.ENABLED ? System.nanoTime() : 0L;
+        Dimension size = FlightRecorderSupport.AVAILABLE
+                ? FlightRecorderEvents.preferredLayoutSize(this, parent) : preferredSize(parent);
+        if (KoalaLayoutMetrics.ENABLED) {
+            KoalaLayoutMetrics.recordPreferredSize(metrics, System.nanoTime() - start);
+        }
+        return size;
+    }
+
+    /**
+     * Computes the preferred size, see {@link #preferredLayoutSize(Container)}.
+     */
+    Dimension preferredSize(Container parent) {
         synchronized (parent.getTreeLock()) {
+            bindSizeCache(parent);
+            if (cachedPreferredSize != null) {
+                return new Dimension(cachedPreferredSize);
+            }
+
+            alignConstraints(parent);
             int maxX = 0;
             int maxY = 0;
-            Component children[] = parent.getComponents();
-            for (int i = 0; i < children.length; i++) {
-                Dimension dim = children[i].getPreferredSize();
-                GridBagConstraints constraints = lookupConstraints(children[i]);
+            for (int i = 0; i < alignedCount; i++) {
+                Dimension dim = alignedComponents[i].getPreferredSize();
+                GridBagConstraints constraints = alignedConstraints[i];
                 int x = constraints.gridwidth > 0 ? dim.width / constraints.gridwidth : 1;
                 int y = constraints.gridheight > 0 ? dim.height / constraints.gridheight : 1;
 
@@ -236,6 +1003,7 @@ public class KoalaLayout implements LayoutManager2, Serializable {
                 preferredDim.height += insets.top + insets.bottom;
             }
 
+            cachedPreferredSize = new Dimension(preferredDim);
             return preferredDim;
         }
     }
@@ -245,6 +1013,8 @@ public class KoalaLayout implements LayoutManager2, Serializable {
      * <code>target</code> container using this grid bag layout.
      * <p>
      * Most applications do not call this method directly.
+     * <p>
+     * The result is cached until the layout is invalidated or its constraints or grid dimensions change.
      *
      * @return minimum size that might be accepted by a component that uses this layout
      * @param parent the container in which to do the layout.
@@ -252,13 +1022,32 @@ public class KoalaLayout implements LayoutManager2, Serializable {
      */
     @Override
     public Dimension minimumLayoutSize(Container parent) {
+        KoalaLayoutStormDetector.record(parent, KoalaLayoutStormDetector.Kind.MINIMUM_SIZE);
+        long start = KoalaLayoutMetrics.ENABLED ? System.nanoTime() : 0L;
+        Dimension size = FlightRecorderSupport.AVAILABLE
+                ? FlightRecorderEvents.minimumLayoutSize(this, parent) : minimumSize(parent);
+        if (KoalaLayoutMetrics.ENABLED) {
+            KoalaLayoutMetrics.recordMinimumSize(metrics, System.nanoTime() - start);
+        }
+        return size;
+    }
+
+    /**
+     * Computes the minimum size, see {@link #minimumLayoutSize(Container)}.
+     */
+    Dimension minimumSize(Container parent) {
         synchronized (parent.getTreeLock()) {
+            bindSizeCache(parent);
+            if (cachedMinimumSize != null) {
+                return new Dimension(cachedMinimumSize);
+            }
+
+            alignConstraints(parent);
             int maxX = 0;
             int maxY = 0;
-            Component children[] = parent.getComponents();
-            for (int i = 0; i < children.length; i++) {
-                Dimension d = children[i].getMinimumSize();
-                GridBagConstraints c = lookupConstraints(children[i]);
+            for (int i = 0; i < alignedCount; i++) {
+                Dimension d = alignedComponents[i].getMinimumSize();
+                GridBagConstraints c = alignedConstraints[i];
                 int x = c.gridwidth > 0 ? ((c.gridx + c.gridwidth) * d.width) / c.gridwidth : 1;
                 int y = c.gridheight > 0 ? ((c.gridy + c.gridheight) * d.height) / c.gridheight : 1;
                 if (x > maxX) {
@@ -268,7 +1057,8 @@ public class KoalaLayout implements LayoutManager2, Serializable {
                     maxY = y;
                 }
             }
-            return new Dimension(maxX, maxY);
+            cachedMinimumSize = new Dimension(maxX, maxY);
+            return new Dimension(cachedMinimumSize);
         }
     }
 
@@ -304,6 +1094,15 @@ public class KoalaLayout implements LayoutManager2, Serializable {
      * <p>
      * To avoid rounding issues, a grid is precalculated and used during the layout of the components.
      * This ensures that contiguous components have no single pixel gap due to rounding issues.
+     * The constraints are interpreted once into a plan which is reused until constraints or children change.
+     * When only the width or only the height of the container changed since the last pass, only that axis is
+     * computed again. All bounds are computed before any child is touched; then only the children whose bounds
+     * changed are moved, each repainting its old and new area itself.
+     * <p>
+     * When nothing relevant changed since the last pass, the method returns without touching any child. Passes are
+     * skipped altogether while a batch of changes is in progress, see {@link #beginUpdate(Container)}.
+     * The grid math itself is done by {@link KoalaLayoutEngine}.
+     * Passes are reported as flight recorder events when the flight recorder is available.
      *
      * @param parent the container in which to do the layout.
      * @see java.awt.Container
@@ -311,138 +1110,626 @@ public class KoalaLayout implements LayoutManager2, Serializable {
      */
     @Override
     public void layoutContainer(Container parent) {
-        synchronized (parent.getTreeLock()) {
+        KoalaLayoutStormDetector.record(parent, KoalaLayoutStormDetector.Kind.LAYOUT);
+        long start = KoalaLayoutMetrics.ENABLED ? System.nanoTime() : 0L;
+        if (FlightRecorderSupport.AVAILABLE) {
+            FlightRecorderEvents.layoutContainer(this, parent);
+        } else {
+            layout(parent);
+        }
+        if (KoalaLayoutMetrics.ENABLED) {
+            KoalaLayoutMetrics.recordLayout(metrics, System.nanoTime() - start, processedCount, movedCount);
+        }
+    }
 
-            // first, determine gridWidth and gridHeight
-            int startx = 0;
-            int starty = 0;
-            Component children[] = parent.getComponents();
-            for (int i = 0; i < children.length; i++) {
-                GridBagConstraints c = lookupConstraints(children[i]);
-                int gridx = c.gridx == GridBagConstraints.RELATIVE ? startx : c.gridx;
-                int gridy = c.gridy == GridBagConstraints.RELATIVE ? starty : c.gridy;
-                int gridw = c.gridwidth == GridBagConstraints.REMAINDER ? 1 : c.gridwidth;
-                int gridh = c.gridheight == GridBagConstraints.REMAINDER ? 1 : c.gridheight;
-                startx = gridx + gridw;
-                starty = gridy + gridh;
-                if (startx > gridWidth) {
-                    gridWidth = startx;
-                }
-                if (starty > gridHeight) {
-                    gridHeight = starty;
-                }
+    /**
+     * Lays out the container, see {@link #layoutContainer(Container)}.
+     */
+    void layout(Container parent) {
+        synchronized (parent.getTreeLock()) {
+            if (parent == updatingParent || isLaidOut(parent)) {
+                movedCount = 0;
+                processedCount = 0;
+                return;
             }
+            KoalaLayoutPlan plan = getPlan(parent);
+            int[] cells = plan.cells;
+            int count = plan.size();
 
-            Insets insets = parent.getInsets();
+            Insets insets = getInsets(parent);
             int viewY = insets.top;
             int viewHeight = parent.getHeight() - insets.top - insets.bottom;
             int viewX = insets.left;
             int viewWidth = parent.getWidth() - insets.left - insets.right;
 
-            Point coords[][] = new Point[gridWidth + 1][gridHeight + 1];
-            for (int i = 0; i <= gridWidth; i++) {
-                for (int j = 0; j <= gridHeight; j++) {
-                    int x = (i * viewWidth) / gridWidth;
-                    int y = (j * viewHeight) / gridHeight;
-                    coords[i][j] = new Point(x, y);
+            // an axis whose view did not change since the last pass of the same plan keeps its edges and bounds
+            boolean incremental = laidOutPlan == plan && laidOutParent == parent;
+            boolean sameX = incremental && viewX == lastViewX && viewWidth == lastViewWidth;
+            boolean sameY = incremental && viewY == lastViewY && viewHeight == lastViewHeight;
+            if (!incremental) {
+                laidOutBounds = new int[count * 4];
+            }
+            int[] bounds = laidOutBounds;
+
+            // x only depends on the column and y only on the row, one edge table per axis is enough
+            boolean shared = template != null && plan == template.getPlan();
+            if (!sameX && shared) {
+                columnEdges = template.columnEdges(viewWidth);
+            } else if (!sameX) {
+                if (columnEdgeBuffer == null || columnEdgeCells != gridWidth || columnEdgeLength != viewWidth) {
+                    columnEdgeBuffer = KoalaLayoutEngine.computeEdges(columnEdgeBuffer, gridWidth, viewWidth);
+                    columnEdgeCells = gridWidth;
+                    columnEdgeLength = viewWidth;
+                }
+                columnEdges = columnEdgeBuffer;
+            }
+            if (!sameY && shared) {
+                rowEdges = template.rowEdges(viewHeight);
+            } else if (!sameY) {
+                if (rowEdgeBuffer == null || rowEdgeCells != gridHeight || rowEdgeLength != viewHeight) {
+                    rowEdgeBuffer = KoalaLayoutEngine.computeEdges(rowEdgeBuffer, gridHeight, viewHeight);
+                    rowEdgeCells = gridHeight;
+                    rowEdgeLength = viewHeight;
                 }
+                rowEdges = rowEdgeBuffer;
             }
+            int[] xEdges = columnEdges;
+            int[] yEdges = rowEdges;
 
-            startx = starty = 0;
-            for (int i = 0; i < children.length; i++) {
-                Component comp = children[i];
-                GridBagConstraints c = lookupConstraints(comp);
-                int gridx = c.gridx == GridBagConstraints.RELATIVE ? startx : c.gridx;
-                int gridy = c.gridy == GridBagConstraints.RELATIVE ? starty : c.gridy;
-                int gridw = c.gridwidth == GridBagConstraints.REMAINDER ? gridWidth - gridx : c.gridwidth;
-                int gridh = c.gridheight == GridBagConstraints.REMAINDER ? gridHeight - gridy : c.gridheight;
-                startx = gridx + gridw;
-                starty = gridy + gridh;
-
-                int cellX = viewX + coords[gridx][gridy].x + c.insets.left;
-                int cellY = viewY + coords[gridx][gridy].y + c.insets.top;
-                int cellWidth = coords[gridx + gridw][gridy].x - coords[gridx][gridy].x - c.insets.left - c.insets.right;
-                int cellHeight = coords[gridx][gridy + gridh].y - coords[gridx][gridy].y - c.insets.top - c.insets.bottom;
-
-                int width;
-                int height;
-
-                // Apply fill constraints
-                Dimension prefDims = comp.getPreferredSize();
-                switch (c.fill) {
-                    case GridBagConstraints.NONE:
-                        // use preferred size if possible
-                        width = Math.min(prefDims.width, cellWidth);
-                        height = Math.min(prefDims.height, cellHeight);
-                        break;
-                    case GridBagConstraints.HORIZONTAL:
-                        // horizontal -> use all cell space horizontally use preferred hight if smaller than cell size
-                        width = cellWidth;
-                        height = Math.min(prefDims.height, cellHeight);
-                        break;
-                    case GridBagConstraints.VERTICAL:
-                        // verticall -> use all cell space vertically use preferred width if smaller than cell size
-                        width = Math.min(prefDims.width, cellWidth);
-                        height = cellHeight;
-                        break;
-                    case GridBagConstraints.BOTH:
-                    default:
-                        // fill both -> use all space
-                        width = cellWidth;
-                        height = cellHeight;
+            // first phase: compute the new bounds of all children
+            if (specialized) {
+                if (kernel == null || kernel.plan != plan) {
+                    kernel = KoalaLayoutKernel.compile(plan);
                 }
+                kernel.layout(alignedComponents, xEdges, viewX, !sameX, yEdges, viewY, !sameY, bounds);
+            } else {
+                for (int i = 0; i < count; i++) {
+                    Component comp = alignedComponents[i];
+                    int offset = i * KoalaLayoutPlan.STRIDE;
+                    int fill = cells[offset + KoalaLayoutPlan.FILL];
+
+                    // a child with a new preferred size must have both of its axes computed again
+                    boolean updateX = !sameX;
+                    boolean updateY = !sameY;
+                    if (KoalaLayoutPlan.isSizeDependentFill(fill) && mayHaveNewPreferredSize(comp)) {
+                        updateX = updateY = true;
+                    }
 
-                int x;
-                int y;
-                switch (c.anchor) {
-                    case GridBagConstraints.NORTH:
-                        x = cellX + (cellWidth - width) /2;
-                        y = cellY;
-                        break;
-                    case GridBagConstraints.NORTHEAST:
-                        x = cellX + (cellWidth - width);
-                        y = cellY;
-                        break;
-                    case GridBagConstraints.EAST:
-                        x = cellX + (cellWidth - width);
-                        y = cellY + (cellHeight - height) / 2;
-                        break;
-                    case GridBagConstraints.SOUTHEAST:
-                        x = cellX + (cellWidth - width);
-                        y = cellY + (cellHeight - height);
-                        break;
-                    case GridBagConstraints.SOUTH:
-                        x = cellX + (cellWidth - width) /2;
-                        y = cellY + (cellHeight - height);
-                        break;
-                    case GridBagConstraints.SOUTHWEST:
-                        x = cellX;
-                        y = cellY + (cellHeight - height);
-                        break;
-                    case GridBagConstraints.WEST:
-                        x = cellX;
-                        y = cellY + (cellHeight - height) / 2;
-                        break;
-                    case GridBagConstraints.NORTHWEST:
-                        x = cellX;
-                        y = cellY;
-                        break;
-                    case GridBagConstraints.CENTER:
-                    default:
-                        x = cellX + (cellWidth - width) / 2;
-                        y = cellY + (cellHeight - height) / 2;
+                    // Apply fill constraints, the preferred size is only queried when the fill depends on it
+                    Dimension prefDims = null;
+                    if ((updateX && !KoalaLayoutEngine.fillsWidth(fill))
+                            || (updateY && !KoalaLayoutEngine.fillsHeight(fill))) {
+                        prefDims = comp.getPreferredSize();
+                    }
+                    if (updateX) {
+                        int prefWidth = prefDims != null ? prefDims.width : 0;
+                        KoalaLayoutEngine.layoutX(cells, offset, xEdges, viewX, prefWidth, bounds, i * 4);
+                    }
+                    if (updateY) {
+                        int prefHeight = prefDims != null ? prefDims.height : 0;
+                        KoalaLayoutEngine.layoutY(cells, offset, yEdges, viewY, prefHeight, bounds, i * 4);
+                    }
                 }
+            }
+
+            applyBounds(bounds, count);
+
+            laidOutParent = parent;
+            laidOutPlan = plan;
+            lastViewX = viewX;
+            lastViewY = viewY;
+            lastViewWidth = viewWidth;
+            lastViewHeight = viewHeight;
+        }
+    }
+
+    /**
+     * Tells whether the last layout pass is still up to date: constraints, children, grid dimensions, insets and size
+     * of the container are unchanged, and no child depending on its preferred size may have a new one. Only
+     * the children depending on their preferred size are looked at, so a container whose children all fill their
+     * cells is checked in constant time. Plans using <code>RELATIVE</code> or <code>REMAINDER</code> depend on the order of the children,
+     * which may change unnoticed, so for them the order is checked as well.
+     *
+     * @param parent the container to be laid out
+     * @return true if laying out the container would not move any child
+     */
+    private boolean isLaidOut(Container parent) {
+        KoalaLayoutPlan current = laidOutPlan;
+        if (current == null || current != plan || laidOutParent != parent || alignedParent != parent
+                || alignedCount != parent.getComponentCount()
+                || alignedTable != componentTable || !isCurrent(current) || (current.relative && !isAligned(parent))) {
+            return false;
+        }
+        Insets insets = getInsets(parent);
+        if (insets.left != lastViewX || insets.top != lastViewY
+                || parent.getWidth() - insets.left - insets.right != lastViewWidth
+                || parent.getHeight() - insets.top - insets.bottom != lastViewHeight) {
+            return false;
+        }
+        for (int index : current.sizeDependentChildren) {
+            if (mayHaveNewPreferredSize(alignedComponents[index])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Tells whether the preferred size of a child may have changed since the last layout pass. A child changing its
+     * preferred size by itself is invalidated; sizes set explicitly, preferred or minimum ones, however change without
+     * invalidating the child, so such children are always asked again.
+     *
+     * @param comp a child of the container
+     * @return true if the bounds of the child must be computed again
+     */
+    static boolean mayHaveNewPreferredSize(Component comp) {
+        return !comp.isValid() || comp.isPreferredSizeSet() || comp.isMinimumSizeSet();
+    }
+
+    /**
+     * Second phase of a layout pass: moves the children whose bounds changed. Moving a child repaints its old and new
+     * area already, so the container is not repainted on top.
+     *
+     * @param bounds x, y, width and height of each child
+     * @param count number of children
+     */
+    private void applyBounds(int[] bounds, int count) {
+        int moved = 0;
+        for (int i = 0; i < count; i++) {
+            Component comp = alignedComponents[i];
+            int b = i * 4;
+            int x = bounds[b];
+            int y = bounds[b + 1];
+            int width = bounds[b + 2];
+            int height = bounds[b + 3];
+            if ((comp.getX() != x) || (comp.getY() != y) || (comp.getWidth() != width) || (comp.getHeight() != height)) {
+                comp.setBounds(x, y, width, height);
+                moved++;
+            }
+        }
+        movedCount = moved;
+        processedCount = count;
+    }
+
+    /**
+     * Returns the number of children whose bounds were changed by the last layout pass.
+     *
+     * @return number of moved or resized children
+     */
+    public int getMovedComponentCount() {
+        return movedCount;
+    }
+
+    /**
+     * Starts a batch of changes to the children of a container: any number of adds, removes and constraint changes
+     * then only cost a hash table update each. Constraints changed by the updating thread are published to
+     * {@link #componentTable} as one new snapshot by the outermost {@link #commitUpdate(Container)}; other threads see
+     * the table from before the batch until then. The children are aligned with their constraints, the plan is
+     * compiled and the container is laid out once, by the commit; layout passes requested in between are skipped.
+     * Calls may be nested, the outermost commit ends the batch. Use as
+     * <pre>
+     * layout.beginUpdate(panel);
+     * try {
+     *     ...
+     * } finally {
+     *     layout.commitUpdate(panel);
+     * }
+     * </pre>
+     *
+     * @param parent the container using this layout
+     */
+    public void beginUpdate(Container parent) {
+        if (parent.getLayout() != this) {
+            throw new IllegalArgumentException("cannot begin update: container does not use this layout");
+        }
+        if (updateDepth > 0 && parent != updatingParent) {
+            throw new IllegalArgumentException("cannot begin update: another container is being updated");
+        }
+        if (updateDepth++ == 0) {
+            updatingParent = parent;
+            updatingThread = Thread.currentThread();
+            // dropping the aligned arrays makes adds and removes skip them, they are rebuilt once by the next pass
+            alignedParent = null;
+            occupancy = null;
+        }
+    }
 
-                Rectangle bounds = comp.getBounds();
-                if ((bounds.x != x) || (bounds.y != y) || (bounds.width != width) || (bounds.height != height)) {
-                    comp.setBounds(x, y, width, height);
+    /**
+     * Ends a batch of changes started by {@link #beginUpdate(Container)}. The outermost commit invalidates the
+     * container once and has it laid out again.
+     *
+     * @param parent the container passed to <code>beginUpdate</code>
+     */
+    public void commitUpdate(Container parent) {
+        if (updateDepth == 0 || parent != updatingParent) {
+            throw new IllegalArgumentException("cannot commit update: no update of this container in progress");
+        }
+        if (--updateDepth > 0) {
+            return;
+        }
+        publishPendingConstraints();
+        updatingParent = null;
+        updatingThread = null;
+        flushSizeCache();
+        if (parent instanceof JComponent) {
+            ((JComponent) parent).revalidate();
+        } else {
+            parent.invalidate();
+            if (parent.isShowing()) {
+                parent.validate();
+            }
+        }
+        parent.repaint();
+    }
+
+    /**
+     * Tells whether a batch of changes is in progress.
+     *
+     * @return true between <code>beginUpdate</code> and the outermost <code>commitUpdate</code>
+     */
+    public boolean isUpdating() {
+        return updateDepth > 0;
+    }
+
+    /**
+     * Adds many components to a container in one batch, see {@link #beginUpdate(Container)}.
+     *
+     * @param parent the container using this layout
+     * @param components the components to append
+     * @param constraints the constraints of each component, a <code>GridBagConstraints</code> or a
+     * {@link KoalaCell}; <code>null</code> to use the defaults or the template for all of them
+     */
+    public void addAll(Container parent, Component[] components, Object[] constraints) {
+        if (constraints != null && constraints.length != components.length) {
+            throw new IllegalArgumentException("cannot add components: one constraint per component is required");
+        }
+        beginUpdate(parent);
+        try {
+            for (int i = 0; i < components.length; i++) {
+                parent.add(components[i], constraints != null ? constraints[i] : null);
+            }
+        } finally {
+            commitUpdate(parent);
+        }
+    }
+
+    /**
+     * Switches layout passes to a kernel specialized for the compiled constraints. The fill, anchor and insets of
+     * each child are decoded once per plan instead of once per child and pass, and children filling their cells are
+     * laid out in a loop of their own. Worth it for stable forms laid out very often; a form whose constraints change
+     * frequently pays for building a kernel for each new plan. The resulting bounds are the same in both modes.
+     *
+     * @param specialized true to lay out with a specialized kernel
+     */
+    public void setSpecialized(boolean specialized) {
+        this.specialized = specialized;
+        kernel = null;
+    }
+
+    public boolean isSpecialized() {
+        return specialized;
+    }
+
+    /**
+     * Captures everything needed to lay out the given container into an immutable problem, which can then be solved
+     * off the event dispatch thread, alone or in a batch with {@link KoalaLayoutEngine#layoutAll(List)}. The solution
+     * matches what {@link #layoutContainer(Container)} would do with the current sizes.
+     *
+     * @param parent the container using this layout
+     * @return the layout problem of the container
+     */
+    public KoalaLayoutProblem createProblem(Container parent) {
+        synchronized (parent.getTreeLock()) {
+            KoalaLayoutPlan current = getPlan(parent);
+            int[] preferredSizes = null;
+            if (current.isSizeDependent()) {
+                preferredSizes = new int[current.size() * 2];
+                for (int i = 0; i < current.size(); i++) {
+                    if (current.isSizeDependent(i)) {
+                        Dimension prefDims = alignedComponents[i].getPreferredSize();
+                        preferredSizes[i * 2] = prefDims.width;
+                        preferredSizes[i * 2 + 1] = prefDims.height;
+                    }
                 }
             }
+            Insets insets = parent.getInsets();
+            return new KoalaLayoutProblem(current, insets.left, insets.top,
+                    parent.getWidth() - insets.left - insets.right, parent.getHeight() - insets.top - insets.bottom,
+                    preferredSizes);
+        }
+    }
+
+    /**
+     * Returns the cell of the container containing the given point. The column and row edges are computed exactly
+     * like in {@link #layoutContainer(Container)}, so the result always matches the laid out children. Points outside
+     * of the grid are mapped to the nearest border cell.
+     *
+     * @param parent the container using this layout
+     * @param point a point in the coordinates of the container
+     * @return column and row of the cell
+     */
+    public Point cellAt(Container parent, Point point) {
+        synchronized (parent.getTreeLock()) {
+            Insets insets = getInsets(parent);
+            int viewWidth = parent.getWidth() - insets.left - insets.right;
+            int viewHeight = parent.getHeight() - insets.top - insets.bottom;
+            return new Point(KoalaLayoutEngine.cellAt(point.x - insets.left, gridWidth, viewWidth),
+                    KoalaLayoutEngine.cellAt(point.y - insets.top, gridHeight, viewHeight));
+        }
+    }
+
+    /**
+     * Returns the grid lines of the container nearest to the given point, i.e. the column and row a component dragged
+     * to that point snaps to. A point within half a cell of the far edge of its cell snaps to that edge, so the result
+     * ranges up to the grid width and height.
+     *
+     * @param parent the container using this layout
+     * @param point a point in the coordinates of the container
+     * @return column and row of the nearest grid lines
+     */
+    public Point gridLineAt(Container parent, Point point) {
+        synchronized (parent.getTreeLock()) {
+            Insets insets = getInsets(parent);
+            int viewWidth = parent.getWidth() - insets.left - insets.right;
+            int viewHeight = parent.getHeight() - insets.top - insets.bottom;
+            return new Point(KoalaLayoutEngine.nearestEdge(point.x - insets.left, gridWidth, viewWidth),
+                    KoalaLayoutEngine.nearestEdge(point.y - insets.top, gridHeight, viewHeight));
+        }
+    }
+
+    /**
+     * Returns the area covered by a range of cells of the container, the bounds a child with these cells and no
+     * insets would get when filling both directions.
+     *
+     * @param parent the container using this layout
+     * @param column first column
+     * @param row first row
+     * @param width number of columns
+     * @param height number of rows
+     * @return the bounds of the cells in the coordinates of the container
+     */
+    public Rectangle cellBounds(Container parent, int column, int row, int width, int height) {
+        synchronized (parent.getTreeLock()) {
+            Insets insets = getInsets(parent);
+            int viewWidth = parent.getWidth() - insets.left - insets.right;
+            int viewHeight = parent.getHeight() - insets.top - insets.bottom;
+            int x = KoalaLayoutEngine.edge(column, gridWidth, viewWidth);
+            int y = KoalaLayoutEngine.edge(row, gridHeight, viewHeight);
+            return new Rectangle(insets.left + x, insets.top + y,
+                    KoalaLayoutEngine.edge(column + width, gridWidth, viewWidth) - x,
+                    KoalaLayoutEngine.edge(row + height, gridHeight, viewHeight) - y);
+        }
+    }
+
+    /**
+     * Returns the child occupying the given cell of the container. If several children overlap in that cell, any one
+     * of them is returned.
+     * <p>
+     * Queries are answered from an index of the occupied cells, which is kept up to date as children are added,
+     * removed or given new constraints, so a query does not depend on the number of children.
+     *
+     * @param parent the container using this layout
+     * @param column column of the cell
+     * @param row row of the cell
+     * @return the child in that cell, or <code>null</code> if the cell is empty
+     */
+    public Component getComponentAt(Container parent, int column, int row) {
+        synchronized (parent.getTreeLock()) {
+            return getOccupancy(parent).componentAt(column, row);
+        }
+    }
+
+    /**
+     * Returns the children occupying at least one cell of the given area of the container.
+     *
+     * @param parent the container using this layout
+     * @param column first column of the area
+     * @param row first row of the area
+     * @param width number of columns of the area
+     * @param height number of rows of the area
+     * @return the children within the area in the order they were indexed
+     */
+    public Set<Component> getComponentsIn(Container parent, int column, int row, int width, int height) {
+        synchronized (parent.getTreeLock()) {
+            return getOccupancy(parent).componentsIn(column, row, width, height);
+        }
+    }
+
+    /**
+     * Returns the other children sharing at least one cell with the given child.
+     *
+     * @param parent the container using this layout
+     * @param comp a child of the container
+     * @return the children overlapping it; empty if there are none or if <code>comp</code> is not a child
+     */
+    public Set<Component> getOverlappingComponents(Container parent, Component comp) {
+        synchronized (parent.getTreeLock()) {
+            CellOccupancyIndex index = getOccupancy(parent);
+            int[] area = index.areaOf(comp);
+            if (area == null) {
+                return new LinkedHashSet<Component>();
+            }
+            Set<Component> result = index.componentsIn(area[0], area[1], area[2], area[3]);
+            result.remove(comp);
+            return result;
         }
     }
 
+    /**
+     * Tells whether any two children of the container share a cell.
+     *
+     * @param parent the container using this layout
+     * @return true if children overlap
+     */
+    public boolean hasOverlappingComponents(Container parent) {
+        synchronized (parent.getTreeLock()) {
+            return getOccupancy(parent).hasOverlaps();
+        }
+    }
+
+    /**
+     * Returns the occupancy index of the children of the given container, building it from the plan if there is none
+     * or if it belongs to another container or grid. Children reordered without being removed and added again are
+     * only noticed by the next layout pass.
+     *
+     * @param parent the container using this layout
+     * @return the index of its occupied cells
+     */
+    private CellOccupancyIndex getOccupancy(Container parent) {
+        if (occupancy == null || alignedParent != parent || alignedCount != parent.getComponentCount()
+                || alignedTable != componentTable || !occupancy.matches(gridWidth, gridHeight)) {
+            KoalaLayoutPlan current = getPlan(parent);
+            occupancy = CellOccupancyIndex.build(alignedComponents, current, !current.relative);
+        }
+        return occupancy;
+    }
+
+    /**
+     * Tells whether the bounds given to the children of the container are independent of their preferred sizes, which
+     * is the case when every child fills its cells in both directions. Laying out such a container again after a
+     * child was invalidated cannot move any child. Answered from the compiled plan while constraints and children are
+     * unchanged.
+     *
+     * @param parent the container using this layout
+     * @return true if no child uses its preferred size
+     * @see KoalaPanel#isValidateRoot()
+     */
+    public boolean isSizeIndependent(Container parent) {
+        synchronized (parent.getTreeLock()) {
+            KoalaLayoutPlan current = plan;
+            if (current == null || alignedParent != parent || alignedCount != parent.getComponentCount()
+                    || alignedTable != componentTable || !isCurrent(current)) {
+                current = getPlan(parent);
+            }
+            return !current.isSizeDependent();
+        }
+    }
+
+    /**
+     * Returns the compiled constraints of the children of the given container, indexed like the aligned arrays. The
+     * plan is only rebuilt when constraints, grid dimensions or children changed since the last call. Compiling grows
+     * the grid if children lie outside of it.
+     *
+     * @param parent the container to be laid out
+     * @return the plan matching the current children
+     */
+    private KoalaLayoutPlan getPlan(Container parent) {
+        alignConstraints(parent);
+        KoalaLayoutPlan current = plan;
+        if (isCurrent(current)) {
+            return current;
+        }
+        if (usesTemplate()) {
+            current = template.getPlan();
+        } else {
+            // the plan grows the grid to the cells of the children; compiled from the configured grid it shrinks too
+            current = autoShrink
+                    ? KoalaLayoutPlan.compile(alignedConstraints, alignedCount, configuredGridWidth, configuredGridHeight)
+                    : KoalaLayoutPlan.compile(alignedConstraints, alignedCount, gridWidth, gridHeight);
+            if (current.gridWidth != gridWidth || current.gridHeight != gridHeight) {
+                boolean grown = current.gridWidth > gridWidth || current.gridHeight > gridHeight;
+                gridWidth = current.gridWidth;
+                gridHeight = current.gridHeight;
+                flushSizeCache();
+                if (KoalaLayoutMetrics.ENABLED && grown) {
+                    KoalaLayoutMetrics.recordGridGrowth(metrics);
+                }
+            }
+        }
+        plan = current;
+        planModCount = modCount;
+        return current;
+    }
+
+    /**
+     * Tells whether the given plan is the one of this layout and neither constraints, grid dimensions nor children
+     * changed since it was compiled.
+     */
+    private boolean isCurrent(KoalaLayoutPlan current) {
+        return current != null && current == plan && planModCount == modCount
+                && current.gridWidth == gridWidth && current.gridHeight == gridHeight;
+    }
+
+    /**
+     * Tells whether the aligned children are laid out exactly as described by the template, so that its plan and
+     * edges can be shared.
+     */
+    private boolean usesTemplate() {
+        publishPendingConstraints();
+        return template != null && componentTable.isEmpty() && alignedCount == template.size()
+                && template.getPlan().gridWidth == gridWidth && template.getPlan().gridHeight == gridHeight;
+    }
+
+    /**
+     * Returns the template whose constraints are shared by this layout.
+     *
+     * @return the template, or <code>null</code> if the layout was not created from one
+     */
+    public KoalaLayoutTemplate getTemplate() {
+        return template;
+    }
+
+    /**
+     * Captures the constraints of the children of the given container into a template, to be shared by identical
+     * containers.
+     *
+     * @param parent the container using this layout
+     * @return the template
+     */
+    public KoalaLayoutTemplate createTemplate(Container parent) {
+        synchronized (parent.getTreeLock()) {
+            alignConstraints(parent);
+            return new KoalaLayoutTemplate(gridWidth, gridHeight,
+                    Arrays.asList(Arrays.copyOf(alignedConstraints, alignedCount)));
+        }
+    }
+
+    /**
+     * Returns the insets of the container, reusing a buffer for Swing containers so that no object is allocated.
+     *
+     * @param parent the laid out container
+     * @return the insets; must not be modified or kept by the caller
+     */
+    private Insets getInsets(Container parent) {
+        if (parent instanceof JComponent) {
+            if (insetsBuffer == null) {
+                insetsBuffer = new Insets(0, 0, 0, 0);
+            }
+            return ((JComponent) parent).getInsets(insetsBuffer);
+        }
+        return parent.getInsets();
+    }
+
+    /**
+     * Lets the grid shrink again. A child placed outside of the grid makes it grow, and by default the grid keeps its
+     * grown dimensions when the child is removed, so that a long running form whose children come and go keeps laying
+     * out an ever larger grid. With auto shrink, every new plan sizes the grid to the configured dimensions grown just
+     * enough for the current children.
+     *
+     * @param autoShrink true to shrink the grid to the current children
+     */
+    public void setAutoShrink(boolean autoShrink) {
+        if (configuredGridWidth <= 0 || configuredGridHeight <= 0) {
+            // layouts serialized before the configured dimensions were kept
+            configuredGridWidth = gridWidth;
+            configuredGridHeight = gridHeight;
+        }
+        this.autoShrink = autoShrink;
+        modCount++;
+        flushSizeCache();
+    }
+
+    public boolean isAutoShrink() {
+        return autoShrink;
+    }
+
     public void setGridheight(int gridheight) {
         this.gridHeight = gridheight;
+        this.configuredGridHeight = gridheight;
+        flow = null;
+        modCount++;
+        occupancy = null;
+        flushSizeCache();
         netbeansLog("setting gridheight from KoalaLayout from classLoader " + this.getClass().getClassLoader() + ": " + this.gridHeight);
     }
 
@@ -453,6 +1740,11 @@ public class KoalaLayout implements LayoutManager2, Serializable {
 
     public void setGridwidth(int gridwidth) {
         this.gridWidth = gridwidth;
+        this.configuredGridWidth = gridwidth;
+        flow = null;
+        modCount++;
+        occupancy = null;
+        flushSizeCache();
         netbeansLog("setting gridwidth from KoalaLayout from classLoader " + this.getClass().getClassLoader() + ": " + this.gridWidth);
     }
 
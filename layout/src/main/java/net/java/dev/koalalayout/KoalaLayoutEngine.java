@@ -0,0 +1,359 @@
+/*
+ * This file is part of KoalaLayout.
+ *
+ * Koala layout is a flexible grid layout for Java Swing.
+ * Copyright (C) 2012 Peter Flukiger, Jean-Marc Borer
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.java.dev.koalalayout;
+
+import java.awt.GridBagConstraints;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * The grid math of {@link KoalaLayout} without any component. Bounds are computed from a view size, the grid
+ * dimensions and the constraints only; no component is touched and no lock is taken, so layouts can be computed and
+ * verified on any thread, e.g. in tests or when rendering reports on a server.
+ * <p>
+ * Bounds are written as four consecutive ints per child: x, y, width and height. Preferred sizes, needed only for
+ * children whose fill is not <code>BOTH</code>, are passed as two ints per child: width and height.
+ * <p>
+ * Many independent problems, e.g. the forms of a batch rendering job, can be solved in parallel with
+ * {@link #layoutAll(List, ForkJoinPool)}.
+ */
+public final class KoalaLayoutEngine {
+
+    private KoalaLayoutEngine() {
+    }
+
+    /**
+     * Computes the bounds of all children of a grid.
+     *
+     * @param gridWidth configured grid width
+     * @param gridHeight configured grid height
+     * @param constraints the constraints of each child in container order
+     * @param viewWidth width of the area to lay out
+     * @param viewHeight height of the area to lay out
+     * @param preferredSizes preferred width and height of each child; may be <code>null</code> if all children fill
+     * both directions
+     * @param bounds receives x, y, width and height of each child; allocated if <code>null</code>
+     * @return the bounds array
+     */
+    public static int[] layout(int gridWidth, int gridHeight, List<? extends GridBagConstraints> constraints,
+            int viewWidth, int viewHeight, int[] preferredSizes, int[] bounds) {
+        return layout(KoalaLayoutPlan.compile(constraints, gridWidth, gridHeight), 0, 0, viewWidth, viewHeight,
+                preferredSizes, bounds);
+    }
+
+    /**
+     * Computes the bounds of all children of a compiled plan.
+     *
+     * @param plan the compiled constraints
+     * @param viewX left edge of the area to lay out
+     * @param viewY top edge of the area to lay out
+     * @param viewWidth width of the area to lay out
+     * @param viewHeight height of the area to lay out
+     * @param preferredSizes preferred width and height of each child; may be <code>null</code> if the plan is not
+     * size dependent
+     * @param bounds receives x, y, width and height of each child; allocated if <code>null</code>
+     * @return the bounds array
+     */
+    public static int[] layout(KoalaLayoutPlan plan, int viewX, int viewY, int viewWidth, int viewHeight,
+            int[] preferredSizes, int[] bounds) {
+        int count = plan.size();
+        if (preferredSizes == null && plan.isSizeDependent()) {
+            throw new IllegalArgumentException("cannot lay out plan: preferred sizes are required when a fill is not BOTH");
+        }
+        if (preferredSizes != null && preferredSizes.length < count * 2) {
+            throw new IllegalArgumentException("cannot lay out plan: expected " + count * 2 + " preferred size values");
+        }
+        if (bounds == null) {
+            bounds = new int[count * 4];
+        } else if (bounds.length < count * 4) {
+            throw new IllegalArgumentException("cannot lay out plan: expected room for " + count * 4 + " bound values");
+        }
+
+        int[] xEdges = computeEdges(null, plan.gridWidth, viewWidth);
+        int[] yEdges = computeEdges(null, plan.gridHeight, viewHeight);
+        int[] cells = plan.cells;
+        for (int i = 0; i < count; i++) {
+            int offset = i * KoalaLayoutPlan.STRIDE;
+            int prefWidth = preferredSizes != null ? preferredSizes[i * 2] : 0;
+            int prefHeight = preferredSizes != null ? preferredSizes[i * 2 + 1] : 0;
+            layoutX(cells, offset, xEdges, viewX, prefWidth, bounds, i * 4);
+            layoutY(cells, offset, yEdges, viewY, prefHeight, bounds, i * 4);
+        }
+        return bounds;
+    }
+
+    /**
+     * Solves many independent layout problems in parallel on the common fork-join pool.
+     *
+     * @param problems the problems to solve
+     * @return the bounds of each problem, in the order of the problems
+     * @see #layoutAll(List, ForkJoinPool)
+     */
+    public static int[][] layoutAll(List<KoalaLayoutProblem> problems) {
+        return layoutAll(problems, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Solves many independent layout problems in parallel. Problems are immutable and each result is written to its
+     * own slot, so the tasks share no mutable state.
+     *
+     * @param problems the problems to solve
+     * @param pool the pool running the tasks
+     * @return the bounds of each problem, in the order of the problems
+     */
+    public static int[][] layoutAll(List<KoalaLayoutProblem> problems, ForkJoinPool pool) {
+        KoalaLayoutProblem[] array = problems.toArray(new KoalaLayoutProblem[problems.size()]);
+        int[][] results = new int[array.length][];
+        if (array.length > 0) {
+            int batchSize = Math.max(1, array.length / (pool.getParallelism() * 4));
+            pool.invoke(new BatchLayoutTask(array, results, 0, array.length, batchSize));
+        }
+        return results;
+    }
+
+    /**
+     * Fills the edge table of one axis: entry <code>i</code> holds the offset of the edge in front of cell
+     * <code>i</code>, the last entry the far edge of the view. The array is reused when it is large enough.
+     *
+     * @param edges the table of the previous pass, may be <code>null</code>
+     * @param cells number of cells along the axis
+     * @param length length of the view along the axis
+     * @return the filled table
+     */
+    static int[] computeEdges(int[] edges, int cells, int length) {
+        if (edges == null || edges.length < cells + 1) {
+            edges = new int[cells + 1];
+        }
+        for (int i = 0; i <= cells; i++) {
+            edges[i] = edge(i, cells, length);
+        }
+        return edges;
+    }
+
+    /**
+     * Returns the offset of the edge in front of the given cell. The product is computed on 64 bits so that large
+     * grids on large views cannot overflow.
+     *
+     * @param index index of the cell, <code>cells</code> for the far edge of the view
+     * @param cells number of cells along the axis
+     * @param length length of the view along the axis
+     * @return offset of the edge from the start of the view
+     */
+    static int edge(int index, int cells, int length) {
+        return (int) (((long) index * length) / cells);
+    }
+
+    /**
+     * Returns the cell containing the given offset, the inverse of {@link #edge(int, int, int)}. Offsets outside of the
+     * view are clamped to the first or last cell.
+     *
+     * @param position offset from the start of the view
+     * @param cells number of cells along the axis
+     * @param length length of the view along the axis
+     * @return index of the cell
+     */
+    static int cellAt(int position, int cells, int length) {
+        if (length <= 0 || position <= 0) {
+            return 0;
+        }
+        if (position >= length) {
+            return cells - 1;
+        }
+        // the estimate is at most one cell off because of the rounding of the edges
+        int cell = (int) (((long) position * cells) / length);
+        while (cell + 1 < cells && edge(cell + 1, cells, length) <= position) {
+            cell++;
+        }
+        while (cell > 0 && edge(cell, cells, length) > position) {
+            cell--;
+        }
+        return cell;
+    }
+
+    /**
+     * Returns the index of the grid line nearest to a position along one axis, the edge a position snaps to when
+     * dragging. The position snaps to the far edge of its cell once it lies within half a cell width of it.
+     *
+     * @param position offset from the start of the view
+     * @param cells number of cells along the axis
+     * @param length length of the view along the axis
+     * @return index of the edge, between 0 and <code>cells</code>
+     */
+    static int nearestEdge(int position, int cells, int length) {
+        if (length <= 0) {
+            return position > 0 ? cells : 0;
+        }
+        int cell = cellAt(position, cells, length);
+        int start = edge(cell, cells, length);
+        int end = edge(cell + 1, cells, length);
+        return position + (end - start) / 2 >= end ? cell + 1 : cell;
+    }
+
+    /**
+     * Computes x and width of one child.
+     *
+     * @param cells packed cells of the plan
+     * @param offset offset of the child in the packed cells
+     * @param xEdges column edges
+     * @param viewX left edge of the view
+     * @param prefWidth preferred width of the child, only read if its fill depends on it
+     * @param bounds receives the bounds
+     * @param b offset of the child in the bounds
+     */
+    static void layoutX(int[] cells, int offset, int[] xEdges, int viewX, int prefWidth, int[] bounds, int b) {
+        int fill = cells[offset + KoalaLayoutPlan.FILL];
+        int gridx = cells[offset + KoalaLayoutPlan.GRID_X];
+        int insetLeft = cells[offset + KoalaLayoutPlan.INSET_LEFT];
+        int cellX = viewX + xEdges[gridx] + insetLeft;
+        int cellWidth = xEdges[gridx + cells[offset + KoalaLayoutPlan.GRID_WIDTH]] - xEdges[gridx] - insetLeft
+                - cells[offset + KoalaLayoutPlan.INSET_RIGHT];
+        int width = fillsWidth(fill) ? cellWidth : Math.min(prefWidth, cellWidth);
+        bounds[b] = alignX(cells[offset + KoalaLayoutPlan.ANCHOR], cellX, cellWidth, width);
+        bounds[b + 2] = width;
+    }
+
+    /**
+     * Computes y and height of one child.
+     *
+     * @param cells packed cells of the plan
+     * @param offset offset of the child in the packed cells
+     * @param yEdges row edges
+     * @param viewY top edge of the view
+     * @param prefHeight preferred height of the child, only read if its fill depends on it
+     * @param bounds receives the bounds
+     * @param b offset of the child in the bounds
+     */
+    static void layoutY(int[] cells, int offset, int[] yEdges, int viewY, int prefHeight, int[] bounds, int b) {
+        int fill = cells[offset + KoalaLayoutPlan.FILL];
+        int gridy = cells[offset + KoalaLayoutPlan.GRID_Y];
+        int insetTop = cells[offset + KoalaLayoutPlan.INSET_TOP];
+        int cellY = viewY + yEdges[gridy] + insetTop;
+        int cellHeight = yEdges[gridy + cells[offset + KoalaLayoutPlan.GRID_HEIGHT]] - yEdges[gridy] - insetTop
+                - cells[offset + KoalaLayoutPlan.INSET_BOTTOM];
+        int height = fillsHeight(fill) ? cellHeight : Math.min(prefHeight, cellHeight);
+        bounds[b + 1] = alignY(cells[offset + KoalaLayoutPlan.ANCHOR], cellY, cellHeight, height);
+        bounds[b + 3] = height;
+    }
+
+    /**
+     * Tells whether a child with the given fill takes the whole width of its cell.
+     */
+    static boolean fillsWidth(int fill) {
+        // horizontal -> use all cell space horizontally, any unknown value behaves like both
+        return fill != GridBagConstraints.NONE && fill != GridBagConstraints.VERTICAL;
+    }
+
+    /**
+     * Tells whether a child with the given fill takes the whole height of its cell.
+     */
+    static boolean fillsHeight(int fill) {
+        // vertical -> use all cell space vertically, any unknown value behaves like both
+        return fill != GridBagConstraints.NONE && fill != GridBagConstraints.HORIZONTAL;
+    }
+
+    /**
+     * Computes the x coordinate of a child within its cell according to its anchor.
+     *
+     * @param anchor the anchor of the child
+     * @param cellX left edge of the cell, insets included
+     * @param cellWidth width of the cell, insets excluded
+     * @param width width of the child
+     * @return x coordinate of the child
+     */
+    static int alignX(int anchor, int cellX, int cellWidth, int width) {
+        switch (anchor) {
+            case GridBagConstraints.NORTHEAST:
+            case GridBagConstraints.EAST:
+            case GridBagConstraints.SOUTHEAST:
+                return cellX + (cellWidth - width);
+            case GridBagConstraints.SOUTHWEST:
+            case GridBagConstraints.WEST:
+            case GridBagConstraints.NORTHWEST:
+                return cellX;
+            case GridBagConstraints.NORTH:
+            case GridBagConstraints.SOUTH:
+            case GridBagConstraints.CENTER:
+            default:
+                return cellX + (cellWidth - width) / 2;
+        }
+    }
+
+    /**
+     * Computes the y coordinate of a child within its cell according to its anchor.
+     *
+     * @param anchor the anchor of the child
+     * @param cellY top edge of the cell, insets included
+     * @param cellHeight height of the cell, insets excluded
+     * @param height height of the child
+     * @return y coordinate of the child
+     */
+    static int alignY(int anchor, int cellY, int cellHeight, int height) {
+        switch (anchor) {
+            case GridBagConstraints.NORTH:
+            case GridBagConstraints.NORTHEAST:
+            case GridBagConstraints.NORTHWEST:
+                return cellY;
+            case GridBagConstraints.SOUTHEAST:
+            case GridBagConstraints.SOUTH:
+            case GridBagConstraints.SOUTHWEST:
+                return cellY + (cellHeight - height);
+            case GridBagConstraints.EAST:
+            case GridBagConstraints.WEST:
+            case GridBagConstraints.CENTER:
+            default:
+                return cellY + (cellHeight - height) / 2;
+        }
+    }
+
+    /**
+     * Splits a range of problems until it is small enough to be solved sequentially.
+     */
+    private static final class BatchLayoutTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+        private final KoalaLayoutProblem[] problems;
+        private final int[][] results;
+        private final int from;
+        private final int to;
+        private final int batchSize;
+
+        BatchLayoutTask(KoalaLayoutProblem[] problems, int[][] results, int from, int to, int batchSize) {
+            this.problems = problems;
+            this.results = results;
+            this.from = from;
+            this.to = to;
+            this.batchSize = batchSize;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= batchSize) {
+                for (int i = from; i < to; i++) {
+                    results[i] = problems[i].solve();
+                }
+            } else {
+                int middle = (from + to) >>> 1;
+                invokeAll(new BatchLayoutTask(problems, results, from, middle, batchSize),
+                        new BatchLayoutTask(problems, results, middle, to, batchSize));
+            }
+        }
+    }
+}
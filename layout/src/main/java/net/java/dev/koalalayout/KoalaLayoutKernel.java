@@ -0,0 +1,200 @@
+/*
+ * This file is part of KoalaLayout.
+ *
+ * Koala layout is a flexible grid layout for Java Swing.
+ * Copyright (C) 2012 Peter Flukiger, Jean-Marc Borer
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.java.dev.koalalayout;
+
+import java.awt.Component;
+import java.awt.Dimension;
+
+/**
+ * A plan specialized for fast layout passes, see {@link KoalaLayout#setSpecialized(boolean)}. Fill and anchor of each
+ * child are decoded once into shift and mask values, and its insets are summed once, so that a pass is a few straight
+ * loops without any switch. Children filling their cells in both directions come first and are laid out without
+ * looking at them at all; the children depending on their preferred size follow.
+ * <p>
+ * The values are stored in one array per property, indexed in kernel order; {@link #order} maps them back to the child
+ * index in the plan. Kernels are immutable.
+ * <p>
+ * The kernel is plain data walked by fixed loops rather than generated code: hidden classes need Java 15, a chain of
+ * method handle combinators per child does not fold into one inlinable method for thousands of children, and
+ * emitting bytecode would add a dependency to this dependency-free library.
+ */
+final class KoalaLayoutKernel {
+
+    /**
+     * the plan the kernel was built from
+     */
+    final KoalaLayoutPlan plan;
+    /**
+     * number of children filling their cells in both directions, at the start of the kernel order
+     */
+    private final int filling;
+    private final int[] order;
+    private final int[] column;
+    private final int[] columnEnd;
+    private final int[] row;
+    private final int[] rowEnd;
+    private final int[] insetLeft;
+    private final int[] insetWidth;
+    private final int[] insetTop;
+    private final int[] insetHeight;
+    /**
+     * lower bounds for the preferred sizes: <code>Integer.MAX_VALUE</code> for a filled axis, so that the size is the
+     * cell size, <code>Integer.MIN_VALUE</code> otherwise
+     */
+    private final int[] widthFloor;
+    private final int[] heightFloor;
+    /**
+     * the offset of a child within its cell is <code>(free space &gt;&gt; shift) &amp; mask</code>: zero for leading,
+     * half for centered and all of the free space for trailing anchors
+     */
+    private final int[] xShift;
+    private final int[] xMask;
+    private final int[] yShift;
+    private final int[] yMask;
+
+    private KoalaLayoutKernel(KoalaLayoutPlan plan) {
+        this.plan = plan;
+        int count = plan.size();
+        order = new int[count];
+        column = new int[count];
+        columnEnd = new int[count];
+        row = new int[count];
+        rowEnd = new int[count];
+        insetLeft = new int[count];
+        insetWidth = new int[count];
+        insetTop = new int[count];
+        insetHeight = new int[count];
+        widthFloor = new int[count];
+        heightFloor = new int[count];
+        xShift = new int[count];
+        xMask = new int[count];
+        yShift = new int[count];
+        yMask = new int[count];
+
+        int[] cells = plan.cells;
+        int next = 0;
+        for (int i = 0; i < count; i++) {
+            if (!plan.isSizeDependent(i)) {
+                order[next++] = i;
+            }
+        }
+        filling = next;
+        for (int i = 0; i < count; i++) {
+            if (plan.isSizeDependent(i)) {
+                order[next++] = i;
+            }
+        }
+
+        for (int k = 0; k < count; k++) {
+            int offset = order[k] * KoalaLayoutPlan.STRIDE;
+            int fill = cells[offset + KoalaLayoutPlan.FILL];
+            int anchor = cells[offset + KoalaLayoutPlan.ANCHOR];
+            column[k] = cells[offset + KoalaLayoutPlan.GRID_X];
+            columnEnd[k] = column[k] + cells[offset + KoalaLayoutPlan.GRID_WIDTH];
+            row[k] = cells[offset + KoalaLayoutPlan.GRID_Y];
+            rowEnd[k] = row[k] + cells[offset + KoalaLayoutPlan.GRID_HEIGHT];
+            insetLeft[k] = cells[offset + KoalaLayoutPlan.INSET_LEFT];
+            insetWidth[k] = insetLeft[k] + cells[offset + KoalaLayoutPlan.INSET_RIGHT];
+            insetTop[k] = cells[offset + KoalaLayoutPlan.INSET_TOP];
+            insetHeight[k] = insetTop[k] + cells[offset + KoalaLayoutPlan.INSET_BOTTOM];
+            widthFloor[k] = KoalaLayoutEngine.fillsWidth(fill) ? Integer.MAX_VALUE : Integer.MIN_VALUE;
+            heightFloor[k] = KoalaLayoutEngine.fillsHeight(fill) ? Integer.MAX_VALUE : Integer.MIN_VALUE;
+
+            // aligning nothing in a cell of two pixels tells the anchor apart: 0 leading, 1 centered, 2 trailing
+            int x = KoalaLayoutEngine.alignX(anchor, 0, 2, 0);
+            xShift[k] = x == 1 ? 1 : 0;
+            xMask[k] = x == 0 ? 0 : -1;
+            int y = KoalaLayoutEngine.alignY(anchor, 0, 2, 0);
+            yShift[k] = y == 1 ? 1 : 0;
+            yMask[k] = y == 0 ? 0 : -1;
+        }
+    }
+
+    /**
+     * Specializes a plan.
+     *
+     * @param plan the compiled constraints
+     * @return the kernel
+     */
+    static KoalaLayoutKernel compile(KoalaLayoutPlan plan) {
+        return new KoalaLayoutKernel(plan);
+    }
+
+    /**
+     * Computes the bounds of the children like the generic pass of {@link KoalaLayout} does. Children depending on
+     * their preferred size are laid out on both axes when they may have a new preferred size.
+     *
+     * @param components the children in plan order
+     * @param xEdges column edges
+     * @param viewX left edge of the view
+     * @param updateX true if x and width must be computed
+     * @param yEdges row edges
+     * @param viewY top edge of the view
+     * @param updateY true if y and height must be computed
+     * @param bounds receives x, y, width and height of each child
+     */
+    void layout(Component[] components, int[] xEdges, int viewX, boolean updateX, int[] yEdges, int viewY,
+            boolean updateY, int[] bounds) {
+        if (updateX) {
+            for (int k = 0; k < filling; k++) {
+                int b = order[k] * 4;
+                int start = xEdges[column[k]];
+                bounds[b] = viewX + start + insetLeft[k];
+                bounds[b + 2] = xEdges[columnEnd[k]] - start - insetWidth[k];
+            }
+        }
+        if (updateY) {
+            for (int k = 0; k < filling; k++) {
+                int b = order[k] * 4;
+                int start = yEdges[row[k]];
+                bounds[b + 1] = viewY + start + insetTop[k];
+                bounds[b + 3] = yEdges[rowEnd[k]] - start - insetHeight[k];
+            }
+        }
+
+        int count = order.length;
+        for (int k = filling; k < count; k++) {
+            int i = order[k];
+            Component comp = components[i];
+            boolean changed = KoalaLayout.mayHaveNewPreferredSize(comp);
+            boolean x = updateX || changed;
+            boolean y = updateY || changed;
+            Dimension prefDims = null;
+            if ((x && widthFloor[k] < 0) || (y && heightFloor[k] < 0)) {
+                prefDims = comp.getPreferredSize();
+            }
+            int b = i * 4;
+            if (x) {
+                int start = xEdges[column[k]];
+                int cellWidth = xEdges[columnEnd[k]] - start - insetWidth[k];
+                int width = Math.min(Math.max(prefDims != null ? prefDims.width : 0, widthFloor[k]), cellWidth);
+                bounds[b] = viewX + start + insetLeft[k] + ((cellWidth - width) >> xShift[k] & xMask[k]);
+                bounds[b + 2] = width;
+            }
+            if (y) {
+                int start = yEdges[row[k]];
+                int cellHeight = yEdges[rowEnd[k]] - start - insetHeight[k];
+                int height = Math.min(Math.max(prefDims != null ? prefDims.height : 0, heightFloor[k]), cellHeight);
+                bounds[b + 1] = viewY + start + insetTop[k] + ((cellHeight - height) >> yShift[k] & yMask[k]);
+                bounds[b + 3] = height;
+            }
+        }
+    }
+}
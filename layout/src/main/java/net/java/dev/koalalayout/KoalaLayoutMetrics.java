@@ -0,0 +1,268 @@
+/*
+ * This file is part of KoalaLayout.
+ *
+ * Koala layout is a flexible grid layout for Java Swing.
+ * Copyright (C) 2012 Peter Flukiger, Jean-Marc Borer
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.java.dev.koalalayout;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Runtime counters of {@link KoalaLayout}, published as platform MBeans.
+ * <p>
+ * Metrics are only collected when the system property <code>koalalayout.metrics</code> is <code>true</code> at
+ * startup. Otherwise the layout checks a constant which the JIT folds away, so the instrumentation costs nothing.
+ * When enabled, all layouts are aggregated in the MBean <code>net.java.dev.koalalayout:type=KoalaLayoutMetrics</code>;
+ * a single layout can additionally be given its own MBean with {@link #register(KoalaLayout, String)}.
+ * <p>
+ * Counters can be updated from several threads at once.
+ */
+public final class KoalaLayoutMetrics implements KoalaLayoutMetricsMBean {
+
+    /**
+     * true if the system property <code>koalalayout.metrics</code> was set to <code>true</code>
+     */
+    public static final boolean ENABLED = Boolean.getBoolean("koalalayout.metrics");
+    private static final String DOMAIN = "net.java.dev.koalalayout";
+    private static final KoalaLayoutMetrics GLOBAL = new KoalaLayoutMetrics();
+
+    static {
+        if (ENABLED) {
+            registerMBean(GLOBAL, DOMAIN + ":type=KoalaLayoutMetrics");
+        }
+    }
+
+    private final LongAdder layoutCount = new LongAdder();
+    private final LongAdder layoutNanos = new LongAdder();
+    private final LongAccumulator maxLayoutNanos = new LongAccumulator(Math::max, 0L);
+    private final LongAdder preferredSizeCount = new LongAdder();
+    private final LongAdder preferredSizeNanos = new LongAdder();
+    private final LongAccumulator maxPreferredSizeNanos = new LongAccumulator(Math::max, 0L);
+    private final LongAdder minimumSizeCount = new LongAdder();
+    private final LongAdder minimumSizeNanos = new LongAdder();
+    private final LongAccumulator maxMinimumSizeNanos = new LongAccumulator(Math::max, 0L);
+    private final LongAdder childrenProcessed = new LongAdder();
+    private final LongAdder boundsApplied = new LongAdder();
+    private final LongAdder boundsSkipped = new LongAdder();
+    private final LongAdder gridGrowthCount = new LongAdder();
+    private ObjectName objectName;
+
+    private KoalaLayoutMetrics() {
+    }
+
+    /**
+     * Returns the metrics aggregated over all layouts.
+     *
+     * @return the global metrics
+     */
+    public static KoalaLayoutMetrics getGlobal() {
+        return GLOBAL;
+    }
+
+    /**
+     * Gives a layout its own metrics, registered as the MBean
+     * <code>net.java.dev.koalalayout:type=KoalaLayoutMetrics,name=</code><i>name</i>. Its passes keep being counted in
+     * the global metrics too. Does nothing and returns <code>null</code> when metrics are disabled.
+     *
+     * @param layout the layout to observe
+     * @param name a name telling the layout apart, e.g. the name of its container
+     * @return the metrics of the layout, or <code>null</code> if metrics are disabled
+     */
+    public static KoalaLayoutMetrics register(KoalaLayout layout, String name) {
+        if (layout == null || name == null) {
+            throw new IllegalArgumentException("cannot register metrics: layout and name must not be null");
+        }
+        if (!ENABLED) {
+            return null;
+        }
+        unregister(layout);
+        KoalaLayoutMetrics metrics = new KoalaLayoutMetrics();
+        metrics.objectName = registerMBean(metrics, DOMAIN + ":type=KoalaLayoutMetrics,name=" + ObjectName.quote(name));
+        layout.metrics = metrics;
+        return metrics;
+    }
+
+    /**
+     * Removes the MBean of a layout registered with {@link #register(KoalaLayout, String)}.
+     *
+     * @param layout the observed layout
+     */
+    public static void unregister(KoalaLayout layout) {
+        KoalaLayoutMetrics metrics = layout.metrics;
+        layout.metrics = null;
+        if (metrics != null && metrics.objectName != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(metrics.objectName);
+            } catch (JMException e) {
+                Logger.getLogger(KoalaLayoutMetrics.class.getName()).log(Level.FINE, "cannot unregister layout metrics", e);
+            }
+        }
+    }
+
+    private static ObjectName registerMBean(KoalaLayoutMetrics metrics, String name) {
+        try {
+            ObjectName objectName = new ObjectName(name);
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            if (server.isRegistered(objectName)) {
+                server.unregisterMBean(objectName);
+            }
+            server.registerMBean(metrics, objectName);
+            return objectName;
+        } catch (JMException e) {
+            Logger.getLogger(KoalaLayoutMetrics.class.getName()).log(Level.WARNING, "cannot register layout metrics " + name, e);
+            return null;
+        }
+    }
+
+    static void recordLayout(KoalaLayoutMetrics own, long nanos, int children, int moved) {
+        GLOBAL.addLayout(nanos, children, moved);
+        if (own != null) {
+            own.addLayout(nanos, children, moved);
+        }
+    }
+
+    static void recordPreferredSize(KoalaLayoutMetrics own, long nanos) {
+        GLOBAL.addPreferredSize(nanos);
+        if (own != null) {
+            own.addPreferredSize(nanos);
+        }
+    }
+
+    static void recordMinimumSize(KoalaLayoutMetrics own, long nanos) {
+        GLOBAL.addMinimumSize(nanos);
+        if (own != null) {
+            own.addMinimumSize(nanos);
+        }
+    }
+
+    static void recordGridGrowth(KoalaLayoutMetrics own) {
+        GLOBAL.gridGrowthCount.increment();
+        if (own != null) {
+            own.gridGrowthCount.increment();
+        }
+    }
+
+    private void addLayout(long nanos, int children, int moved) {
+        layoutCount.increment();
+        layoutNanos.add(nanos);
+        maxLayoutNanos.accumulate(nanos);
+        childrenProcessed.add(children);
+        boundsApplied.add(moved);
+        boundsSkipped.add(children - moved);
+    }
+
+    private void addPreferredSize(long nanos) {
+        preferredSizeCount.increment();
+        preferredSizeNanos.add(nanos);
+        maxPreferredSizeNanos.accumulate(nanos);
+    }
+
+    private void addMinimumSize(long nanos) {
+        minimumSizeCount.increment();
+        minimumSizeNanos.add(nanos);
+        maxMinimumSizeNanos.accumulate(nanos);
+    }
+
+    @Override
+    public long getLayoutCount() {
+        return layoutCount.sum();
+    }
+
+    @Override
+    public long getLayoutNanos() {
+        return layoutNanos.sum();
+    }
+
+    @Override
+    public long getMaxLayoutNanos() {
+        return maxLayoutNanos.get();
+    }
+
+    @Override
+    public long getPreferredSizeCount() {
+        return preferredSizeCount.sum();
+    }
+
+    @Override
+    public long getPreferredSizeNanos() {
+        return preferredSizeNanos.sum();
+    }
+
+    @Override
+    public long getMaxPreferredSizeNanos() {
+        return maxPreferredSizeNanos.get();
+    }
+
+    @Override
+    public long getMinimumSizeCount() {
+        return minimumSizeCount.sum();
+    }
+
+    @Override
+    public long getMinimumSizeNanos() {
+        return minimumSizeNanos.sum();
+    }
+
+    @Override
+    public long getMaxMinimumSizeNanos() {
+        return maxMinimumSizeNanos.get();
+    }
+
+    @Override
+    public long getChildrenProcessed() {
+        return childrenProcessed.sum();
+    }
+
+    @Override
+    public long getBoundsApplied() {
+        return boundsApplied.sum();
+    }
+
+    @Override
+    public long getBoundsSkipped() {
+        return boundsSkipped.sum();
+    }
+
+    @Override
+    public long getGridGrowthCount() {
+        return gridGrowthCount.sum();
+    }
+
+    @Override
+    public void reset() {
+        layoutCount.reset();
+        layoutNanos.reset();
+        maxLayoutNanos.reset();
+        preferredSizeCount.reset();
+        preferredSizeNanos.reset();
+        maxPreferredSizeNanos.reset();
+        minimumSizeCount.reset();
+        minimumSizeNanos.reset();
+        maxMinimumSizeNanos.reset();
+        childrenProcessed.reset();
+        boundsApplied.reset();
+        boundsSkipped.reset();
+        gridGrowthCount.reset();
+    }
+}
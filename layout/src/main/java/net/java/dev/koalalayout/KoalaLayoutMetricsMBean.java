@@ -0,0 +1,70 @@
+/*
+ * This file is part of KoalaLayout.
+ *
+ * Koala layout is a flexible grid layout for Java Swing.
+ * Copyright (C) 2012 Peter Flukiger, Jean-Marc Borer
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.java.dev.koalalayout;
+
+/**
+ * Management interface of {@link KoalaLayoutMetrics}. All durations are in nanoseconds.
+ */
+public interface KoalaLayoutMetricsMBean {
+
+    long getLayoutCount();
+
+    long getLayoutNanos();
+
+    long getMaxLayoutNanos();
+
+    long getPreferredSizeCount();
+
+    long getPreferredSizeNanos();
+
+    long getMaxPreferredSizeNanos();
+
+    long getMinimumSizeCount();
+
+    long getMinimumSizeNanos();
+
+    long getMaxMinimumSizeNanos();
+
+    /**
+     * Returns the number of children visited by layout passes. Passes returning early because nothing changed visit
+     * none.
+     */
+    long getChildrenProcessed();
+
+    /**
+     * Returns the number of children moved or resized by layout passes.
+     */
+    long getBoundsApplied();
+
+    /**
+     * Returns the number of children left untouched by layout passes because their bounds did not change.
+     */
+    long getBoundsSkipped();
+
+    /**
+     * Returns how often the grid grew because children were placed outside of it.
+     */
+    long getGridGrowthCount();
+
+    /**
+     * Sets all counters back to zero.
+     */
+    void reset();
+}
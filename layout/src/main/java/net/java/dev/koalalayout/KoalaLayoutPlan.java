@@ -0,0 +1,223 @@
+/*
+ * This file is part of KoalaLayout.
+ *
+ * Koala layout is a flexible grid layout for Java Swing.
+ * Copyright (C) 2012 Peter Flukiger, Jean-Marc Borer
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.java.dev.koalalayout;
+
+import java.awt.GridBagConstraints;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Immutable result of interpreting the constraints of all children of a container. <code>RELATIVE</code> and
+ * <code>REMAINDER</code> are resolved once, so a layout pass only has to turn the packed cell values into pixels.
+ * Plans do not reference any component and can be shared between threads.
+ * <p>
+ * The values of child <code>i</code> start at <code>cells[i * STRIDE]</code>; use the offsets below to read them.
+ * Children are indexed in container order.
+ *
+ * @see KoalaLayoutEngine
+ */
+public final class KoalaLayoutPlan {
+
+    static final int GRID_X = 0;
+    static final int GRID_Y = 1;
+    static final int GRID_WIDTH = 2;
+    static final int GRID_HEIGHT = 3;
+    static final int FILL = 4;
+    static final int ANCHOR = 5;
+    static final int INSET_TOP = 6;
+    static final int INSET_LEFT = 7;
+    static final int INSET_BOTTOM = 8;
+    static final int INSET_RIGHT = 9;
+    static final int STRIDE = 10;
+
+    /**
+     * number of children the plan was compiled for
+     */
+    private final int size;
+    /**
+     * packed resolved cells, fill, anchor and insets of all children
+     */
+    final int[] cells;
+    /**
+     * grid dimensions including the growth needed by the children
+     */
+    final int gridWidth;
+    final int gridHeight;
+    /**
+     * true if at least one child depends on its preferred size
+     */
+    final boolean sizeDependent;
+    /**
+     * indices of the children depending on their preferred size
+     */
+    final int[] sizeDependentChildren;
+    /**
+     * true if at least one child uses <code>RELATIVE</code> or <code>REMAINDER</code>, so that its cells depend on the
+     * other children and their order
+     */
+    final boolean relative;
+
+    private KoalaLayoutPlan(int size, int[] cells, int gridWidth, int gridHeight, int[] sizeDependentChildren,
+            boolean relative) {
+        this.size = size;
+        this.cells = cells;
+        this.gridWidth = gridWidth;
+        this.gridHeight = gridHeight;
+        this.sizeDependent = sizeDependentChildren.length > 0;
+        this.sizeDependentChildren = sizeDependentChildren;
+        this.relative = relative;
+    }
+
+    /**
+     * Returns the number of children in the plan.
+     *
+     * @return number of children
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the grid width, grown if some children lie outside of the configured grid.
+     *
+     * @return number of columns
+     */
+    public int getGridWidth() {
+        return gridWidth;
+    }
+
+    /**
+     * Returns the grid height, grown if some children lie outside of the configured grid.
+     *
+     * @return number of rows
+     */
+    public int getGridHeight() {
+        return gridHeight;
+    }
+
+    /**
+     * Tells whether the bounds of at least one child depend on its preferred size, i.e. whether preferred sizes must
+     * be supplied to lay out the plan.
+     *
+     * @return true if a child has a fill other than <code>BOTH</code>
+     */
+    public boolean isSizeDependent() {
+        return sizeDependent;
+    }
+
+    /**
+     * Tells whether the bounds of the given child depend on its preferred size.
+     *
+     * @param index index of the child
+     * @return true if the child has a fill other than <code>BOTH</code>
+     */
+    public boolean isSizeDependent(int index) {
+        return isSizeDependentFill(cells[index * STRIDE + FILL]);
+    }
+
+    /**
+     * Resolves the constraints of the given children. <code>RELATIVE</code> and <code>REMAINDER</code> are
+     * interpreted as by {@link KoalaLayout}.
+     *
+     * @param constraints the constraints of each child in container order
+     * @param gridWidth configured grid width
+     * @param gridHeight configured grid height
+     * @return the compiled plan
+     */
+    public static KoalaLayoutPlan compile(List<? extends GridBagConstraints> constraints, int gridWidth, int gridHeight) {
+        if (gridWidth <= 0 || gridHeight <= 0) {
+            throw new IllegalArgumentException("cannot compile layout plan: width and height must be positive");
+        }
+        GridBagConstraints[] array = constraints.toArray(new GridBagConstraints[constraints.size()]);
+        return compile(array, array.length, gridWidth, gridHeight);
+    }
+
+    /**
+     * Resolves the constraints of all children. The grid is grown when children lie outside of it, exactly like a
+     * layout pass always did.
+     *
+     * @param constraints the constraints of each child in container order
+     * @param count number of children, the array may be longer
+     * @param gridWidth configured grid width
+     * @param gridHeight configured grid height
+     * @return the compiled plan
+     */
+    static KoalaLayoutPlan compile(GridBagConstraints[] constraints, int count, int gridWidth, int gridHeight) {
+        // first, determine gridWidth and gridHeight
+        int startx = 0;
+        int starty = 0;
+        for (int i = 0; i < count; i++) {
+            GridBagConstraints c = constraints[i];
+            int gridx = c.gridx == GridBagConstraints.RELATIVE ? startx : c.gridx;
+            int gridy = c.gridy == GridBagConstraints.RELATIVE ? starty : c.gridy;
+            int gridw = c.gridwidth == GridBagConstraints.REMAINDER ? 1 : c.gridwidth;
+            int gridh = c.gridheight == GridBagConstraints.REMAINDER ? 1 : c.gridheight;
+            startx = gridx + gridw;
+            starty = gridy + gridh;
+            if (startx > gridWidth) {
+                gridWidth = startx;
+            }
+            if (starty > gridHeight) {
+                gridHeight = starty;
+            }
+        }
+
+        // then resolve the cell of each child against the final grid
+        int[] cells = new int[count * STRIDE];
+        int[] sizeDependentChildren = new int[count];
+        int sizeDependentCount = 0;
+        boolean relative = false;
+        startx = starty = 0;
+        for (int i = 0; i < count; i++) {
+            GridBagConstraints c = constraints[i];
+            int gridx = c.gridx == GridBagConstraints.RELATIVE ? startx : c.gridx;
+            int gridy = c.gridy == GridBagConstraints.RELATIVE ? starty : c.gridy;
+            int gridw = c.gridwidth == GridBagConstraints.REMAINDER ? gridWidth - gridx : c.gridwidth;
+            int gridh = c.gridheight == GridBagConstraints.REMAINDER ? gridHeight - gridy : c.gridheight;
+            startx = gridx + gridw;
+            starty = gridy + gridh;
+
+            int offset = i * STRIDE;
+            cells[offset + GRID_X] = gridx;
+            cells[offset + GRID_Y] = gridy;
+            cells[offset + GRID_WIDTH] = gridw;
+            cells[offset + GRID_HEIGHT] = gridh;
+            cells[offset + FILL] = c.fill;
+            cells[offset + ANCHOR] = c.anchor;
+            cells[offset + INSET_TOP] = c.insets.top;
+            cells[offset + INSET_LEFT] = c.insets.left;
+            cells[offset + INSET_BOTTOM] = c.insets.bottom;
+            cells[offset + INSET_RIGHT] = c.insets.right;
+            if (isSizeDependentFill(c.fill)) {
+                sizeDependentChildren[sizeDependentCount++] = i;
+            }
+            relative |= c.gridx < 0 || c.gridy < 0 || c.gridwidth <= 0 || c.gridheight <= 0;
+        }
+        return new KoalaLayoutPlan(count, cells, gridWidth, gridHeight,
+                Arrays.copyOf(sizeDependentChildren, sizeDependentCount), relative);
+    }
+
+    /**
+     * Tells whether a child with the given fill needs its preferred size to be laid out.
+     */
+    static boolean isSizeDependentFill(int fill) {
+        return fill == GridBagConstraints.NONE || fill == GridBagConstraints.HORIZONTAL || fill == GridBagConstraints.VERTICAL;
+    }
+}
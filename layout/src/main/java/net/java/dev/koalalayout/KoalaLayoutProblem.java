@@ -0,0 +1,108 @@
+/*
+ * This file is part of KoalaLayout.
+ *
+ * Koala layout is a flexible grid layout for Java Swing.
+ * Copyright (C) 2012 Peter Flukiger, Jean-Marc Borer
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.java.dev.koalalayout;
+
+import java.awt.GridBagConstraints;
+import java.util.List;
+
+/**
+ * An immutable, self contained layout problem: a compiled plan, the view to lay it out in and the preferred sizes of
+ * the children. Problems share no mutable state and can be solved on any thread, see
+ * {@link KoalaLayoutEngine#layoutAll(List)}.
+ *
+ * @see KoalaLayout#createProblem(java.awt.Container)
+ */
+public final class KoalaLayoutProblem {
+
+    private final KoalaLayoutPlan plan;
+    private final int viewX;
+    private final int viewY;
+    private final int viewWidth;
+    private final int viewHeight;
+    private final int[] preferredSizes;
+
+    /**
+     * Creates a problem from raw constraints.
+     *
+     * @param gridWidth configured grid width
+     * @param gridHeight configured grid height
+     * @param constraints the constraints of each child in container order
+     * @param viewWidth width of the area to lay out
+     * @param viewHeight height of the area to lay out
+     * @param preferredSizes preferred width and height of each child; may be <code>null</code> if all children fill
+     * both directions
+     */
+    public KoalaLayoutProblem(int gridWidth, int gridHeight, List<? extends GridBagConstraints> constraints,
+            int viewWidth, int viewHeight, int[] preferredSizes) {
+        this(KoalaLayoutPlan.compile(constraints, gridWidth, gridHeight), 0, 0, viewWidth, viewHeight, preferredSizes);
+    }
+
+    /**
+     * Creates a problem from a compiled plan.
+     *
+     * @param plan the compiled constraints
+     * @param viewX left edge of the area to lay out
+     * @param viewY top edge of the area to lay out
+     * @param viewWidth width of the area to lay out
+     * @param viewHeight height of the area to lay out
+     * @param preferredSizes preferred width and height of each child; may be <code>null</code> if the plan is not
+     * size dependent. The array is copied.
+     */
+    public KoalaLayoutProblem(KoalaLayoutPlan plan, int viewX, int viewY, int viewWidth, int viewHeight, int[] preferredSizes) {
+        if (plan == null) {
+            throw new IllegalArgumentException("cannot create layout problem: plan must not be null");
+        }
+        this.plan = plan;
+        this.viewX = viewX;
+        this.viewY = viewY;
+        this.viewWidth = viewWidth;
+        this.viewHeight = viewHeight;
+        this.preferredSizes = preferredSizes != null ? preferredSizes.clone() : null;
+    }
+
+    public KoalaLayoutPlan getPlan() {
+        return plan;
+    }
+
+    public int getViewX() {
+        return viewX;
+    }
+
+    public int getViewY() {
+        return viewY;
+    }
+
+    public int getViewWidth() {
+        return viewWidth;
+    }
+
+    public int getViewHeight() {
+        return viewHeight;
+    }
+
+    /**
+     * Computes the bounds of all children.
+     *
+     * @return x, y, width and height of each child
+     */
+    public int[] solve() {
+        return KoalaLayoutEngine.layout(plan, viewX, viewY, viewWidth, viewHeight, preferredSizes, null);
+    }
+}
@@ -0,0 +1,425 @@
+/*
+ * This file is part of KoalaLayout.
+ *
+ * Koala layout is a flexible grid layout for Java Swing.
+ * Copyright (C) 2012 Peter Flukiger, Jean-Marc Borer
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.java.dev.koalalayout;
+
+import java.awt.Container;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.WeakHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Diagnostic tool finding the code which makes containers using {@link KoalaLayout} invalidate and lay out over and
+ * over again.
+ * <p>
+ * Once installed, the detector counts per container how often it is invalidated, laid out and asked for its sizes.
+ * When one of these happens more than <i>threshold</i> times within the sliding window, the container is storming:
+ * the call stacks of its following invalidations are sampled, and when the window has elapsed a {@link Report} with
+ * the counts and the most frequent invalidation sites is handed to the listener, whether or not the container became
+ * quiet meanwhile. The default listener logs a warning.
+ * <p>
+ * Starting the application with <code>-Dkoalalayout.stormDetection=true</code> installs a detector logging storms of
+ * more than <code>koalalayout.stormThreshold</code> (default 100) passes within <code>koalalayout.stormWindow</code>
+ * milliseconds (default 1000). When no detector is installed, layouts only read a static field.
+ */
+public final class KoalaLayoutStormDetector {
+
+    /**
+     * What happened to a container.
+     */
+    public enum Kind {
+        INVALIDATION, LAYOUT, PREFERRED_SIZE, MINIMUM_SIZE
+    }
+
+    /**
+     * Receives the storms found by the detector. Called on the daemon thread of the detector, without any lock held.
+     */
+    public interface Listener {
+
+        void stormDetected(Report report);
+    }
+
+    /**
+     * Logs storms as warnings to the logger of this class.
+     */
+    public static final Listener LOGGING_LISTENER = new Listener() {
+
+        @Override
+        public void stormDetected(Report report) {
+            Logger.getLogger(KoalaLayoutStormDetector.class.getName()).log(Level.WARNING, report.toString());
+        }
+    };
+
+    /**
+     * number of stack frames kept per invalidation site
+     */
+    private static final int SITE_DEPTH = 8;
+    /**
+     * largest number of distinct invalidation sites kept per storm
+     */
+    private static final int MAX_SITES = 64;
+    private static volatile KoalaLayoutStormDetector active;
+    private static Timer timer;
+    /**
+     * Reads the system clock and reports storms on a daemon timer thread.
+     */
+    static final Scheduler TIMER_SCHEDULER = new Scheduler() {
+
+        @Override
+        public long nanoTime() {
+            return System.nanoTime();
+        }
+
+        @Override
+        public void schedule(final Runnable report, long delayMillis) {
+            timer().schedule(new TimerTask() {
+
+                @Override
+                public void run() {
+                    report.run();
+                }
+            }, delayMillis);
+        }
+    };
+
+    static {
+        if (Boolean.getBoolean("koalalayout.stormDetection")) {
+            install(Integer.getInteger("koalalayout.stormThreshold", 100),
+                    Integer.getInteger("koalalayout.stormWindow", 1000), LOGGING_LISTENER);
+        }
+    }
+
+    private final int threshold;
+    private final long windowNanos;
+    private final int sampleInterval;
+    private final Listener listener;
+    private final Scheduler scheduler;
+    private final Map<Container, Tracker> trackers = new WeakHashMap<Container, Tracker>();
+
+    private KoalaLayoutStormDetector(int threshold, long windowMillis, int sampleInterval, Listener listener,
+            Scheduler scheduler) {
+        this.threshold = threshold;
+        this.windowNanos = windowMillis * 1000000L;
+        this.sampleInterval = sampleInterval;
+        this.listener = listener;
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * Installs a detector for all layouts, replacing the current one.
+     *
+     * @param threshold number of passes of one kind within the window making a storm
+     * @param windowMillis length of the sliding window in milliseconds
+     * @param listener receives the reports
+     * @return the installed detector
+     */
+    public static KoalaLayoutStormDetector install(int threshold, long windowMillis, Listener listener) {
+        return install(threshold, windowMillis, 1, listener);
+    }
+
+    /**
+     * Installs a detector for all layouts, replacing the current one.
+     *
+     * @param threshold number of passes of one kind within the window making a storm
+     * @param windowMillis length of the sliding window in milliseconds
+     * @param sampleInterval only every n-th invalidation of a storming container has its stack sampled
+     * @param listener receives the reports
+     * @return the installed detector
+     */
+    public static KoalaLayoutStormDetector install(int threshold, long windowMillis, int sampleInterval,
+            Listener listener) {
+        return install(threshold, windowMillis, sampleInterval, listener, TIMER_SCHEDULER);
+    }
+
+    /**
+     * Installs a detector for all layouts reading the time from and scheduling its reports on the given scheduler.
+     */
+    static KoalaLayoutStormDetector install(int threshold, long windowMillis, int sampleInterval, Listener listener,
+            Scheduler scheduler) {
+        if (threshold <= 0 || windowMillis <= 0 || sampleInterval <= 0) {
+            throw new IllegalArgumentException("cannot install storm detector: threshold, window and sample interval must be positive");
+        }
+        if (listener == null) {
+            throw new IllegalArgumentException("cannot install storm detector: listener must not be null");
+        }
+        KoalaLayoutStormDetector detector = new KoalaLayoutStormDetector(threshold, windowMillis, sampleInterval, listener,
+                scheduler);
+        active = detector;
+        return detector;
+    }
+
+    /**
+     * Removes the installed detector, if any.
+     */
+    public static void uninstall() {
+        active = null;
+    }
+
+    /**
+     * Returns the installed detector.
+     *
+     * @return the detector or <code>null</code> if storms are not detected
+     */
+    public static KoalaLayoutStormDetector getInstalled() {
+        return active;
+    }
+
+    /**
+     * Counts a pass of a layout for the installed detector, if any.
+     *
+     * @param target the container concerned
+     * @param kind what happened
+     */
+    static void record(Container target, Kind kind) {
+        KoalaLayoutStormDetector detector = active;
+        if (detector != null) {
+            detector.count(target, kind);
+        }
+    }
+
+    private synchronized void count(Container target, Kind kind) {
+        long now = scheduler.nanoTime();
+        Tracker tracker = trackers.get(target);
+        if (tracker == null) {
+            tracker = new Tracker(threshold);
+            trackers.put(target, tracker);
+        }
+
+        // the oldest of the last threshold passes tells whether they all happened within the window
+        long[] times = tracker.times[kind.ordinal()];
+        int index = tracker.next[kind.ordinal()];
+        long oldest = times[index];
+        times[index] = now;
+        tracker.next[kind.ordinal()] = (index + 1) % threshold;
+        boolean storming = oldest != 0 && now - oldest <= windowNanos;
+
+        if (tracker.stormStart == 0) {
+            if (storming) {
+                tracker.stormStart = now;
+                Arrays.fill(tracker.counts, 0);
+                scheduleReport(target, tracker);
+            } else {
+                return;
+            }
+        }
+        tracker.counts[kind.ordinal()]++;
+        if (kind == Kind.INVALIDATION && ++tracker.invalidations % sampleInterval == 0) {
+            tracker.sample(new Throwable().getStackTrace());
+        }
+    }
+
+    /**
+     * Reports the storm of a container once its window has elapsed, even if nothing happens to the container any more.
+     */
+    private void scheduleReport(final Container target, final Tracker tracker) {
+        final long stormStart = tracker.stormStart;
+        Runnable task = new Runnable() {
+
+            @Override
+            public void run() {
+                Report report;
+                synchronized (KoalaLayoutStormDetector.this) {
+                    if (tracker.stormStart != stormStart) {
+                        return;
+                    }
+                    report = tracker.report(target, (scheduler.nanoTime() - stormStart) / 1000000L);
+                    tracker.stormStart = 0;
+                    tracker.sites.clear();
+                }
+                try {
+                    listener.stormDetected(report);
+                } catch (RuntimeException e) {
+                    // a failing listener must not cancel the timer and with it all later reports
+                    Logger.getLogger(KoalaLayoutStormDetector.class.getName()).log(Level.WARNING, "storm listener failed", e);
+                }
+            }
+        };
+        scheduler.schedule(task, windowNanos / 1000000L);
+    }
+
+    private static synchronized Timer timer() {
+        if (timer == null) {
+            timer = new Timer("KoalaLayout storm detector", true);
+        }
+        return timer;
+    }
+
+    /**
+     * Source of the time and runner of the delayed reports of a detector.
+     */
+    interface Scheduler {
+
+        long nanoTime();
+
+        void schedule(Runnable report, long delayMillis);
+    }
+
+    /**
+     * Recent passes of one container.
+     */
+    private static final class Tracker {
+
+        /**
+         * times of the last passes per kind, used as ring buffers
+         */
+        final long[][] times;
+        final int[] next = new int[Kind.values().length];
+        /**
+         * start of the current storm, 0 if the container is quiet
+         */
+        long stormStart;
+        final int[] counts = new int[Kind.values().length];
+        int invalidations;
+        final Map<List<StackTraceElement>, int[]> sites = new HashMap<List<StackTraceElement>, int[]>();
+
+        Tracker(int threshold) {
+            times = new long[Kind.values().length][threshold];
+        }
+
+        /**
+         * Counts the invalidation site of a stack, the first frames outside of the JDK and of this library.
+         */
+        void sample(StackTraceElement[] stack) {
+            int start = 0;
+            while (start < stack.length && isInternal(stack[start].getClassName())) {
+                start++;
+            }
+            if (start == stack.length) {
+                start = 0;
+            }
+            List<StackTraceElement> site = Arrays.asList(Arrays.copyOfRange(stack, start, Math.min(stack.length, start + SITE_DEPTH)));
+            int[] count = sites.get(site);
+            if (count != null) {
+                count[0]++;
+            } else if (sites.size() < MAX_SITES) {
+                sites.put(site, new int[]{1});
+            }
+        }
+
+        Report report(Container target, long millis) {
+            List<Offender> offenders = new ArrayList<Offender>(sites.size());
+            for (Map.Entry<List<StackTraceElement>, int[]> entry : sites.entrySet()) {
+                offenders.add(new Offender(entry.getKey().toArray(new StackTraceElement[0]), entry.getValue()[0]));
+            }
+            Collections.sort(offenders, (a, b) -> Integer.compare(b.getCount(), a.getCount()));
+            Map<Kind, Integer> countsByKind = new EnumMap<Kind, Integer>(Kind.class);
+            for (Kind kind : Kind.values()) {
+                countsByKind.put(kind, counts[kind.ordinal()]);
+            }
+            return new Report(target, millis, countsByKind, offenders);
+        }
+
+        private static boolean isInternal(String className) {
+            return className.startsWith("java.") || className.startsWith("javax.") || className.startsWith("sun.")
+                    || className.startsWith("jdk.") || className.startsWith("net.java.dev.koalalayout.");
+        }
+    }
+
+    /**
+     * An invalidation site and how often it was sampled.
+     */
+    public static final class Offender {
+
+        private final StackTraceElement[] stack;
+        private final int count;
+
+        Offender(StackTraceElement[] stack, int count) {
+            this.stack = stack;
+            this.count = count;
+        }
+
+        /**
+         * Returns the innermost frames of the site, starting with the first one outside of the JDK and this library.
+         */
+        public StackTraceElement[] getStack() {
+            return stack.clone();
+        }
+
+        public int getCount() {
+            return count;
+        }
+    }
+
+    /**
+     * A storm of one container: what happened how often during the storm and where the invalidations came from.
+     */
+    public static final class Report {
+
+        private final Container container;
+        private final long durationMillis;
+        private final Map<Kind, Integer> counts;
+        private final List<Offender> offenders;
+
+        Report(Container container, long durationMillis, Map<Kind, Integer> counts, List<Offender> offenders) {
+            this.container = container;
+            this.durationMillis = durationMillis;
+            this.counts = Collections.unmodifiableMap(counts);
+            this.offenders = Collections.unmodifiableList(offenders);
+        }
+
+        public Container getContainer() {
+            return container;
+        }
+
+        public long getDurationMillis() {
+            return durationMillis;
+        }
+
+        public int getCount(Kind kind) {
+            return counts.get(kind);
+        }
+
+        /**
+         * Returns the sampled invalidation sites, the most frequent first.
+         */
+        public List<Offender> getOffenders() {
+            return offenders;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder text = new StringBuilder("layout storm in ")
+                    .append(container.getClass().getName());
+            if (container.getName() != null) {
+                text.append(" '").append(container.getName()).append('\'');
+            }
+            text.append(" within ").append(durationMillis).append(" ms:");
+            for (Kind kind : Kind.values()) {
+                text.append(' ').append(counts.get(kind)).append(' ').append(kind.name().toLowerCase(Locale.ROOT));
+            }
+            for (Offender offender : offenders) {
+                text.append("\n  ").append(offender.count).append(" invalidations");
+                for (StackTraceElement frame : offender.stack) {
+                    text.append("\n    at ").append(frame);
+                }
+            }
+            return text.toString();
+        }
+    }
+}
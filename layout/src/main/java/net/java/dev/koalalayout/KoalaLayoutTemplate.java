@@ -0,0 +1,179 @@
+/*
+ * This file is part of KoalaLayout.
+ *
+ * Koala layout is a flexible grid layout for Java Swing.
+ * Copyright (C) 2012 Peter Flukiger, Jean-Marc Borer
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.java.dev.koalalayout;
+
+import java.awt.GridBagConstraints;
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Immutable constraints of a form, compiled once and shared by any number of identical containers, e.g. the row
+ * panels of a list. Each container gets its own {@link KoalaLayout#KoalaLayout(KoalaLayoutTemplate)}, and its
+ * children are added without constraints in template order: child <code>i</code> is laid out with constraints
+ * <code>i</code> of the template. The layouts then hold no constraints of their own and share the compiled plan as
+ * well as the column and row edges of the most recently used view sizes.
+ * <p>
+ * Constraints set explicitly on a child of such a layout take precedence over the template; that layout then compiles
+ * its own plan.
+ */
+public final class KoalaLayoutTemplate implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+    /**
+     * number of view sizes whose edges are kept per axis by default
+     */
+    public static final int DEFAULT_EDGE_CACHE_SIZE = 8;
+
+    private final int gridWidth;
+    private final int gridHeight;
+    private final GridBagConstraints[] constraints;
+    private final int edgeCacheSize;
+    private final transient KoalaLayoutPlan plan;
+    private final transient EdgeCache columnEdges;
+    private final transient EdgeCache rowEdges;
+
+    /**
+     * Creates a template keeping the edges of {@link #DEFAULT_EDGE_CACHE_SIZE} view sizes per axis.
+     *
+     * @param gridWidth configured grid width
+     * @param gridHeight configured grid height
+     * @param constraints the constraints of each child in container order; they are copied
+     */
+    public KoalaLayoutTemplate(int gridWidth, int gridHeight, List<? extends GridBagConstraints> constraints) {
+        this(gridWidth, gridHeight, constraints, DEFAULT_EDGE_CACHE_SIZE);
+    }
+
+    /**
+     * Creates a template.
+     *
+     * @param gridWidth configured grid width
+     * @param gridHeight configured grid height
+     * @param constraints the constraints of each child in container order; they are copied
+     * @param edgeCacheSize number of view sizes whose column and row edges are kept
+     */
+    public KoalaLayoutTemplate(int gridWidth, int gridHeight, List<? extends GridBagConstraints> constraints,
+            int edgeCacheSize) {
+        if (edgeCacheSize <= 0) {
+            throw new IllegalArgumentException("cannot create layout template: edge cache size must be positive");
+        }
+        this.gridWidth = gridWidth;
+        this.gridHeight = gridHeight;
+        this.constraints = new GridBagConstraints[constraints.size()];
+        for (int i = 0; i < this.constraints.length; i++) {
+            this.constraints[i] = (GridBagConstraints) constraints.get(i).clone();
+        }
+        this.edgeCacheSize = edgeCacheSize;
+        this.plan = KoalaLayoutPlan.compile(Arrays.asList(this.constraints), gridWidth, gridHeight);
+        this.columnEdges = new EdgeCache(plan.gridWidth, edgeCacheSize);
+        this.rowEdges = new EdgeCache(plan.gridHeight, edgeCacheSize);
+    }
+
+    /**
+     * Returns the compiled constraints. The grid dimensions of the plan include the growth needed by the children.
+     *
+     * @return the shared plan
+     */
+    public KoalaLayoutPlan getPlan() {
+        return plan;
+    }
+
+    /**
+     * Returns the number of children described by the template.
+     *
+     * @return number of constraints
+     */
+    public int size() {
+        return constraints.length;
+    }
+
+    /**
+     * Returns a copy of the constraints of a child.
+     *
+     * @param index index of the child
+     * @return its constraints
+     */
+    public GridBagConstraints getConstraints(int index) {
+        return (GridBagConstraints) constraints[index].clone();
+    }
+
+    /**
+     * Returns the shared constraints of a child, which must not be modified.
+     */
+    GridBagConstraints constraintsAt(int index) {
+        return constraints[index];
+    }
+
+    /**
+     * Returns the column edges for a view width, see {@link KoalaLayoutEngine#computeEdges(int[], int, int)}. The
+     * array is shared and must not be modified.
+     */
+    int[] columnEdges(int viewWidth) {
+        return columnEdges.get(viewWidth);
+    }
+
+    /**
+     * Returns the row edges for a view height. The array is shared and must not be modified.
+     */
+    int[] rowEdges(int viewHeight) {
+        return rowEdges.get(viewHeight);
+    }
+
+    private Object readResolve() {
+        return new KoalaLayoutTemplate(gridWidth, gridHeight, Arrays.asList(constraints), edgeCacheSize);
+    }
+
+    /**
+     * Edge tables of the least recently used view lengths along one axis. Lookups scan the few entries and allocate
+     * nothing.
+     */
+    private static final class EdgeCache {
+
+        private final int cells;
+        private final int[] lengths;
+        private final int[][] edges;
+        private final long[] lastUse;
+        private long clock;
+
+        EdgeCache(int cells, int capacity) {
+            this.cells = cells;
+            this.lengths = new int[capacity];
+            this.edges = new int[capacity][];
+            this.lastUse = new long[capacity];
+        }
+
+        synchronized int[] get(int length) {
+            int victim = 0;
+            for (int i = 0; i < edges.length; i++) {
+                if (edges[i] != null && lengths[i] == length) {
+                    lastUse[i] = ++clock;
+                    return edges[i];
+                }
+                if (lastUse[i] < lastUse[victim]) {
+                    victim = i;
+                }
+            }
+            edges[victim] = KoalaLayoutEngine.computeEdges(null, cells, length);
+            lengths[victim] = length;
+            lastUse[victim] = ++clock;
+            return edges[victim];
+        }
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * This file is part of KoalaLayout.
+ *
+ * Koala layout is a flexible grid layout for Java Swing.
+ * Copyright (C) 2012 Peter Flukiger, Jean-Marc Borer
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.java.dev.koalalayout;
+
+import java.awt.LayoutManager;
+import javax.swing.JPanel;
+
+/**
+ * A panel laid out by a {@link KoalaLayout} which acts as a validate root as long as the bounds of its children do not
+ * depend on their preferred sizes, i.e. while every child fills its cells in both directions.
+ * <p>
+ * A child changing its text or icon then only has this panel laid out again instead of every container up to the
+ * window. In exchange, ancestors are not laid out again when the preferred size of this panel changes through such a
+ * change; they pick it up the next time they are validated themselves. This suits panels whose size is set by their
+ * surroundings, such as dashboards and quote boards, and can be switched off with
+ * {@link #setValidateRootWhenSizeIndependent(boolean)}.
+ */
+public class KoalaPanel extends JPanel {
+
+    private static final long serialVersionUID = 1L;
+
+    private boolean validateRootWhenSizeIndependent = true;
+
+    /**
+     * Creates a new panel with a 1x1 grid.
+     */
+    public KoalaPanel() {
+        this(new KoalaLayout());
+    }
+
+    /**
+     * Creates a new panel.
+     *
+     * @param layout the layout of the panel
+     */
+    public KoalaPanel(KoalaLayout layout) {
+        super(layout);
+    }
+
+    public boolean isValidateRootWhenSizeIndependent() {
+        return validateRootWhenSizeIndependent;
+    }
+
+    /**
+     * Tells whether the panel may act as a validate root while its layout is size independent.
+     *
+     * @param validateRootWhenSizeIndependent false to always propagate validation to the ancestors
+     */
+    public void setValidateRootWhenSizeIndependent(boolean validateRootWhenSizeIndependent) {
+        this.validateRootWhenSizeIndependent = validateRootWhenSizeIndependent;
+    }
+
+    /**
+     * Returns true while every child fills its cells in both directions, see
+     * {@link KoalaLayout#isSizeIndependent(java.awt.Container)}.
+     */
+    @Override
+    public boolean isValidateRoot() {
+        LayoutManager layout = getLayout();
+        return validateRootWhenSizeIndependent && layout instanceof KoalaLayout
+                && ((KoalaLayout) layout).isSizeIndependent(this);
+    }
+}
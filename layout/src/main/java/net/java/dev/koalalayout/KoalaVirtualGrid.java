@@ -0,0 +1,404 @@
+/*
+ * This file is part of KoalaLayout.
+ *
+ * Koala layout is a flexible grid layout for Java Swing.
+ * Copyright (C) 2012 Peter Flukiger, Jean-Marc Borer
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.java.dev.koalalayout;
+
+import java.awt.Component;
+import java.awt.Container;
+import java.awt.Dimension;
+import java.awt.LayoutManager;
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import javax.swing.JComponent;
+import javax.swing.JViewport;
+import javax.swing.Scrollable;
+import javax.swing.SwingConstants;
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
+
+/**
+ * A grid of equally sized cells laid out by a {@link KoalaLayout}, where only the cells intersecting the visible area
+ * exist as components. It is meant to be the view of a <code>JScrollPane</code>.
+ * <p>
+ * Components are obtained from a {@link KoalaCellRenderer}, which also tells which cells each of them covers and how
+ * it is placed in them, and are recycled when their cells scroll out of view, so memory and layout time depend on the
+ * visible area, not on the number of cells. Components are realized and recycled when the grid is scrolled or resized,
+ * never during a layout pass; the layout then places them like any other child of a <code>KoalaLayout</code>.
+ * <p>
+ * The renderer is only serialized with the grid when it is <code>Serializable</code>; otherwise a deserialized grid
+ * keeps its components but needs a new renderer before it can realize other cells.
+ */
+public class KoalaVirtualGrid extends JComponent implements Scrollable {
+
+    private static final long serialVersionUID = 1L;
+    /**
+     * Constraints of the spare components, which must not make the grid grow
+     */
+    private static final KoalaCell SPARE_CELL = KoalaCell.of(0, 0, 1, 1);
+
+    private final KoalaLayout layout;
+    private int columns;
+    private int rows;
+    private int cellWidth;
+    private int cellHeight;
+    private transient KoalaCellRenderer renderer;
+    /**
+     * Components of the currently realized areas and the areas they cover, keyed by the index of the first cell of
+     * each area
+     */
+    private Map<Long, Component> window = new HashMap<Long, Component>();
+    private Map<Long, KoalaCell> windowAreas = new HashMap<Long, KoalaCell>();
+    /**
+     * Components of cells which scrolled out of view, waiting to be recycled
+     */
+    private final ArrayDeque<Component> spares = new ArrayDeque<Component>();
+    private transient JViewport viewport;
+    private final ChangeListener viewportListener = new ViewportHandler();
+
+    /**
+     * Creates a new virtual grid.
+     *
+     * @param columns number of columns
+     * @param rows number of rows
+     * @param cellWidth preferred width of a cell
+     * @param cellHeight preferred height of a cell
+     * @param renderer supplies the components of the visible cells
+     */
+    public KoalaVirtualGrid(int columns, int rows, int cellWidth, int cellHeight, KoalaCellRenderer renderer) {
+        if (columns <= 0 || rows <= 0) {
+            throw new IllegalArgumentException("cannot create KoalaVirtualGrid: columns and rows must be positive");
+        }
+        if (renderer == null) {
+            throw new IllegalArgumentException("cannot create KoalaVirtualGrid: renderer must not be null");
+        }
+        this.columns = columns;
+        this.rows = rows;
+        this.cellWidth = cellWidth;
+        this.cellHeight = cellHeight;
+        this.renderer = renderer;
+        this.layout = new KoalaLayout(columns, rows);
+        super.setLayout(layout);
+    }
+
+    /**
+     * The grid is always laid out by its own <code>KoalaLayout</code>.
+     */
+    @Override
+    public void setLayout(LayoutManager mgr) {
+        if (mgr != layout) {
+            throw new IllegalArgumentException("cannot set layout: KoalaVirtualGrid lays out its cells itself");
+        }
+    }
+
+    public int getColumns() {
+        return columns;
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    /**
+     * Changes the number of cells. All realized components are recycled.
+     *
+     * @param columns number of columns
+     * @param rows number of rows
+     */
+    public void setGridSize(int columns, int rows) {
+        if (columns <= 0 || rows <= 0) {
+            throw new IllegalArgumentException("cannot resize KoalaVirtualGrid: columns and rows must be positive");
+        }
+        synchronized (getTreeLock()) {
+            this.columns = columns;
+            this.rows = rows;
+            layout.setGridwidth(columns);
+            layout.setGridheight(rows);
+            releaseWindow();
+            updateWindow();
+        }
+    }
+
+    /**
+     * Returns the renderer, <code>null</code> if the grid was deserialized with a renderer which is not serializable.
+     *
+     * @return the renderer
+     */
+    public KoalaCellRenderer getCellRenderer() {
+        return renderer;
+    }
+
+    /**
+     * Replaces the renderer. All realized components are discarded.
+     *
+     * @param renderer supplies the components of the visible cells
+     */
+    public void setCellRenderer(KoalaCellRenderer renderer) {
+        if (renderer == null) {
+            throw new IllegalArgumentException("cannot set renderer: renderer must not be null");
+        }
+        synchronized (getTreeLock()) {
+            this.renderer = renderer;
+            releaseWindow();
+            for (Component spare : spares) {
+                remove(spare);
+            }
+            spares.clear();
+            updateWindow();
+        }
+    }
+
+    /**
+     * Asks the renderer again for every visible cell, e.g. after the underlying data changed.
+     */
+    public void refresh() {
+        synchronized (getTreeLock()) {
+            releaseWindow();
+            updateWindow();
+        }
+    }
+
+    /**
+     * Returns the number of components currently realized for the visible cells.
+     *
+     * @return number of visible components
+     */
+    public int getRealizedCellCount() {
+        return window.size();
+    }
+
+    /**
+     * Returns the bounds of a cell in the coordinates of this grid.
+     *
+     * @param column column of the cell
+     * @param row row of the cell
+     * @return bounds of the cell
+     */
+    public Rectangle getCellBounds(int column, int row) {
+        return layout.cellBounds(this, column, row, 1, 1);
+    }
+
+    /**
+     * Returns the preferred size, the preferred cell size times the number of cells limited to the largest
+     * possible component size.
+     */
+    @Override
+    public Dimension getPreferredSize() {
+        if (isPreferredSizeSet()) {
+            return super.getPreferredSize();
+        }
+        return new Dimension((int) Math.min(Integer.MAX_VALUE, (long) columns * cellWidth),
+                (int) Math.min(Integer.MAX_VALUE, (long) rows * cellHeight));
+    }
+
+    /**
+     * Realizes the cells visible at the new size.
+     */
+    @Override
+    public void setBounds(int x, int y, int width, int height) {
+        boolean resized = width != getWidth() || height != getHeight();
+        super.setBounds(x, y, width, height);
+        if (resized) {
+            updateWindow();
+        }
+    }
+
+    /**
+     * Realizes the components of the visible cells and recycles the ones which are no longer visible. The grid is then
+     * laid out once by the next validation.
+     */
+    private void updateWindow() {
+        synchronized (getTreeLock()) {
+            if (renderer == null) {
+                return;
+            }
+            Rectangle visible = getVisibleRect();
+            Map<Long, KoalaCell> areas = new HashMap<Long, KoalaCell>();
+            if (!visible.isEmpty() && getWidth() > 0 && getHeight() > 0) {
+                Point first = layout.cellAt(this, visible.getLocation());
+                Point last = layout.cellAt(this, new Point(visible.x + visible.width - 1, visible.y + visible.height - 1));
+                for (int row = first.y; row <= last.y; row++) {
+                    for (int column = first.x; column <= last.x; column++) {
+                        KoalaCell area = renderer.getCellArea(this, column, row);
+                        if (area.getGridx() > column || area.getGridx() + area.getGridwidth() <= column
+                                || area.getGridy() > row || area.getGridy() + area.getGridheight() <= row) {
+                            throw new IllegalArgumentException("cannot realize cell " + column + "," + row
+                                    + ": renderer returned an area not containing it");
+                        }
+                        areas.put(index(area.getGridx(), area.getGridy()), area);
+                    }
+                }
+            }
+            if (areas.equals(windowAreas)) {
+                return;
+            }
+
+            // keep the components of the areas which stay visible
+            Map<Long, Component> newWindow = new HashMap<Long, Component>();
+            for (Map.Entry<Long, Component> entry : window.entrySet()) {
+                KoalaCell area = areas.get(entry.getKey());
+                if (area != null && area.equals(windowAreas.get(entry.getKey()))) {
+                    newWindow.put(entry.getKey(), entry.getValue());
+                } else {
+                    recycle(entry.getValue());
+                }
+            }
+
+            // realize the areas which became visible, recycling the components of the hidden ones
+            for (Map.Entry<Long, KoalaCell> entry : areas.entrySet()) {
+                if (!newWindow.containsKey(entry.getKey())) {
+                    newWindow.put(entry.getKey(), realize(spares.poll(), entry.getValue()));
+                }
+            }
+            window = newWindow;
+            windowAreas = areas;
+
+            // keep at most one screen of spare components
+            while (spares.size() > window.size()) {
+                remove(spares.pop());
+            }
+        }
+        revalidate();
+    }
+
+    /**
+     * Asks the renderer for the component of an area and makes it a visible child of this grid placed in the area.
+     */
+    private Component realize(Component recycled, KoalaCell area) {
+        Component comp = renderer.getCellComponent(this, recycled, area.getGridx(), area.getGridy());
+        if (recycled != null && recycled != comp) {
+            remove(recycled);
+        }
+        if (comp.getParent() != this) {
+            add(comp, area);
+        } else {
+            layout.setConstraints(comp, area);
+        }
+        comp.setVisible(true);
+        return comp;
+    }
+
+    /**
+     * Hides a component and keeps it as a spare.
+     */
+    private void recycle(Component comp) {
+        comp.setVisible(false);
+        layout.setConstraints(comp, SPARE_CELL);
+        spares.push(comp);
+    }
+
+    /**
+     * Moves all realized components to the spares.
+     */
+    private void releaseWindow() {
+        for (Component comp : window.values()) {
+            recycle(comp);
+        }
+        window.clear();
+        windowAreas.clear();
+        revalidate();
+    }
+
+    private long index(int column, int row) {
+        return (long) row * columns + column;
+    }
+
+    @Override
+    public void addNotify() {
+        super.addNotify();
+        Container parent = getParent();
+        if (parent instanceof JViewport) {
+            viewport = (JViewport) parent;
+            viewport.addChangeListener(viewportListener);
+        }
+        updateWindow();
+    }
+
+    @Override
+    public void removeNotify() {
+        if (viewport != null) {
+            viewport.removeChangeListener(viewportListener);
+            viewport = null;
+        }
+        super.removeNotify();
+    }
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+        out.writeObject(renderer instanceof Serializable ? renderer : null);
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        renderer = (KoalaCellRenderer) in.readObject();
+    }
+
+    /**
+     * Realizes the newly visible cells whenever the viewport scrolls.
+     */
+    private class ViewportHandler implements ChangeListener, Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public void stateChanged(ChangeEvent e) {
+            updateWindow();
+        }
+    }
+
+    @Override
+    public Dimension getPreferredScrollableViewportSize() {
+        return getPreferredSize();
+    }
+
+    /**
+     * Scrolls by one cell.
+     */
+    @Override
+    public int getScrollableUnitIncrement(Rectangle visibleRect, int orientation, int direction) {
+        if (orientation == SwingConstants.HORIZONTAL) {
+            return Math.max(1, getWidth() / columns);
+        }
+        return Math.max(1, getHeight() / rows);
+    }
+
+    /**
+     * Scrolls by one screen.
+     */
+    @Override
+    public int getScrollableBlockIncrement(Rectangle visibleRect, int orientation, int direction) {
+        return orientation == SwingConstants.HORIZONTAL ? visibleRect.width : visibleRect.height;
+    }
+
+    @Override
+    public boolean getScrollableTracksViewportWidth() {
+        return false;
+    }
+
+    @Override
+    public boolean getScrollableTracksViewportHeight() {
+        return false;
+    }
+}
@@ -0,0 +1,137 @@
+/*
+ * This file is part of KoalaLayout.
+ *
+ * Koala layout is a flexible grid layout for Java Swing.
+ * Copyright (C) 2012 Peter Flukiger, Jean-Marc Borer
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.java.dev.koalalayout;
+
+import java.awt.Component;
+import java.awt.Container;
+import java.awt.GridBagConstraints;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class CellOccupancyIndexTest {
+
+    @Test
+    public void sparseGridAnswersLikeDenseGrid() {
+        Random random = new Random(11);
+        for (int round = 0; round < 20; round++) {
+            // same children on a small grid, indexed densely, and on a huge grid, indexed sparsely
+            KoalaLayout small = new KoalaLayout(40, 40);
+            KoalaLayout huge = new KoalaLayout(40, 2000);
+            Container smallPanel = new JPanel(small);
+            Container hugePanel = new JPanel(huge);
+            for (int i = 0; i < 30; i++) {
+                KoalaCell cell = KoalaCell.of(random.nextInt(40), random.nextInt(40), 1 + random.nextInt(8),
+                        1 + random.nextInt(8));
+                smallPanel.add(new JLabel(), cell);
+                hugePanel.add(new JLabel(), cell);
+            }
+            small.getComponentAt(smallPanel, 0, 0);
+            huge.getComponentAt(hugePanel, 0, 0);
+            for (int i = 0; i < 10; i++) {
+                int index = random.nextInt(smallPanel.getComponentCount());
+                KoalaCell cell = KoalaCell.of(random.nextInt(40), random.nextInt(40), 1 + random.nextInt(8), 1);
+                small.setConstraints(smallPanel.getComponent(index), cell);
+                huge.setConstraints(hugePanel.getComponent(index), cell);
+                if (i % 3 == 0) {
+                    smallPanel.remove(index);
+                    hugePanel.remove(index);
+                }
+            }
+
+            assertEquals(small.hasOverlappingComponents(smallPanel), huge.hasOverlappingComponents(hugePanel));
+            for (int row = 0; row < 40; row++) {
+                for (int column = 0; column < 40; column++) {
+                    assertEquals(indices(smallPanel, small.getComponentsIn(smallPanel, column, row, 1, 1)),
+                            indices(hugePanel, huge.getComponentsIn(hugePanel, column, row, 1, 1)));
+                }
+            }
+            for (int i = 0; i < smallPanel.getComponentCount(); i++) {
+                assertEquals(indices(smallPanel, small.getOverlappingComponents(smallPanel, smallPanel.getComponent(i))),
+                        indices(hugePanel, huge.getOverlappingComponents(hugePanel, hugePanel.getComponent(i))));
+            }
+        }
+    }
+
+    @Test
+    public void childSpanningHugeGridIsFound() {
+        KoalaLayout layout = new KoalaLayout(100000, 100000);
+        JPanel panel = new JPanel(layout);
+        JLabel background = new JLabel();
+        JLabel tile = new JLabel();
+        panel.add(background, KoalaCell.of(0, 0, 100000, 100000));
+        panel.add(tile, KoalaCell.of(99998, 99998, 1, 1));
+
+        assertSame(background, layout.getComponentAt(panel, 50000, 50000));
+        assertEquals(new HashSet<Component>(Arrays.<Component>asList(background, tile)),
+                layout.getComponentsIn(panel, 99990, 99990, 10, 10));
+        assertTrue(layout.hasOverlappingComponents(panel));
+
+        panel.remove(background);
+        assertNull(layout.getComponentAt(panel, 50000, 50000));
+        assertFalse(layout.hasOverlappingComponents(panel));
+    }
+
+    @Test(timeout = 5000)
+    public void tallChildDoesNotSlowDownQueriesAmongShortOnes() {
+        KoalaLayoutPlan empty = KoalaLayoutPlan.compile(Collections.<GridBagConstraints>emptyList(), 10, 1000000);
+        CellOccupancyIndex index = CellOccupancyIndex.build(new Component[0], empty, true);
+        Component[] tiles = new Component[30000];
+        for (int i = 0; i < tiles.length; i++) {
+            tiles[i] = new Component() {
+            };
+            index.put(tiles[i], i % 10, i / 10 * 10, 1, 1 + i % 3);
+        }
+        Component column = new JLabel();
+        index.put(column, 9, 0, 1, 1000000);
+
+        // every query would look at all rows above it if the tall column were in the same bucket as the tiles
+        for (int i = 0; i < 20000; i++) {
+            int tile = i * 5 % tiles.length;
+            assertSame(tiles[tile], index.componentAt(tile % 10, tile / 10 * 10));
+        }
+        assertEquals(new HashSet<Component>(Arrays.asList(tiles[9], column)), index.componentsIn(9, 0, 1, 1));
+        assertTrue(index.hasOverlaps());
+
+        index.remove(column);
+        assertSame(tiles[19], index.componentAt(9, 10));
+        assertNull(index.componentAt(9, 500003));
+        assertFalse(index.hasOverlaps());
+    }
+
+    private static Set<Integer> indices(Container parent, Set<Component> components) {
+        Set<Integer> result = new HashSet<Integer>();
+        for (Component comp : components) {
+            result.add(parent.getComponentZOrder(comp));
+        }
+        return result;
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ * This file is part of KoalaLayout.
+ *
+ * Koala layout is a flexible grid layout for Java Swing.
+ * Copyright (C) 2012 Peter Flukiger, Jean-Marc Borer
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.java.dev.koalalayout;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+import jdk.jfr.EventType;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class FlightRecorderEventsTest {
+
+    @Test
+    public void passesAreRecordedWhileEnabled() throws Exception {
+        KoalaLayout layout = new KoalaLayout(2, 2);
+        JPanel panel = new JPanel(layout);
+        panel.setName("form");
+        for (int i = 0; i < 4; i++) {
+            panel.add(new JLabel("x"), KoalaCell.of(i % 2, i / 2, 1, 1));
+        }
+        panel.setSize(200, 100);
+
+        Recording recording = new Recording();
+        recording.enable("net.java.dev.koalalayout.LayoutContainer").withThreshold(Duration.ZERO);
+        recording.start();
+        try {
+            assertTrue(EventType.getEventType(FlightRecorderEvents.LayoutContainerEvent.class).isEnabled());
+            layout.layoutContainer(panel);
+        } finally {
+            recording.stop();
+        }
+        Path file = Files.createTempFile("koalalayout", ".jfr");
+        try {
+            recording.dump(file);
+            List<RecordedEvent> events = RecordingFile.readAllEvents(file);
+            assertEquals(1, events.size());
+            RecordedEvent event = events.get(0);
+            assertEquals("form", event.getString("containerName"));
+            assertEquals(4, event.getInt("childCount"));
+            assertEquals(4, event.getInt("movedCount"));
+            assertEquals(200, event.getInt("viewWidth"));
+        } finally {
+            recording.close();
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void passesRunWithoutRecording() {
+        assertFalse(EventType.getEventType(FlightRecorderEvents.LayoutContainerEvent.class).isEnabled());
+        KoalaLayout layout = new KoalaLayout(2, 1);
+        JPanel panel = new JPanel(layout);
+        JLabel label = new JLabel("x");
+        panel.add(label, KoalaCell.of(1, 0, 1, 1));
+        panel.setSize(200, 100);
+        layout.layoutContainer(panel);
+        assertEquals(100, label.getX());
+        assertEquals(1, layout.getMovedComponentCount());
+    }
+
+    @Test
+    public void sizePassesAreRecordedAndFastPassesFiltered() throws Exception {
+        KoalaLayout layout = new KoalaLayout(2, 1);
+        JPanel panel = new JPanel(layout);
+        panel.add(new JLabel("x"), KoalaCell.of(0, 0, 1, 1));
+        panel.setSize(200, 100);
+
+        Recording recording = new Recording();
+        recording.enable("net.java.dev.koalalayout.PreferredLayoutSize").withThreshold(Duration.ZERO);
+        recording.enable("net.java.dev.koalalayout.MinimumLayoutSize").withThreshold(Duration.ZERO);
+        // passes faster than the threshold are dropped
+        recording.enable("net.java.dev.koalalayout.LayoutContainer").withThreshold(Duration.ofSeconds(10));
+        recording.start();
+        try {
+            layout.preferredLayoutSize(panel);
+            layout.minimumLayoutSize(panel);
+            layout.layoutContainer(panel);
+        } finally {
+            recording.stop();
+        }
+        Path file = Files.createTempFile("koalalayout", ".jfr");
+        try {
+            recording.dump(file);
+            Set<String> names = new HashSet<String>();
+            for (RecordedEvent event : RecordingFile.readAllEvents(file)) {
+                names.add(event.getEventType().getName());
+                assertEquals(1, event.getInt("childCount"));
+                assertEquals(2, event.getInt("gridWidth"));
+            }
+            assertTrue(names.contains("net.java.dev.koalalayout.PreferredLayoutSize"));
+            assertTrue(names.contains("net.java.dev.koalalayout.MinimumLayoutSize"));
+            assertFalse(names.contains("net.java.dev.koalalayout.LayoutContainer"));
+        } finally {
+            recording.close();
+            Files.delete(file);
+        }
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * This file is part of KoalaLayout.
+ *
+ * Koala layout is a flexible grid layout for Java Swing.
+ * Copyright (C) 2012 Peter Flukiger, Jean-Marc Borer
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.java.dev.koalalayout;
+
+import java.awt.Component;
+import java.awt.GridBagConstraints;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+public class KoalaCellTest {
+
+    @Test
+    public void cellsInUseStayInterned() {
+        JPanel panel = new JPanel(new KoalaLayout(1, 1));
+        for (int i = 0; i < 200; i++) {
+            panel.add(new JLabel(), KoalaCell.of(0, 0, 1, 1));
+            if (i % 20 == 0) {
+                System.gc();
+            }
+        }
+
+        KoalaLayout layout = (KoalaLayout) panel.getLayout();
+        Set<GridBagConstraints> shared = Collections.newSetFromMap(new IdentityHashMap<GridBagConstraints, Boolean>());
+        for (Component comp : panel.getComponents()) {
+            shared.add(layout.lookupConstraints(comp));
+        }
+        assertEquals(1, shared.size());
+        assertSame(KoalaCell.of(0, 0, 1, 1).sharedConstraints(), shared.iterator().next());
+    }
+
+    @Test
+    public void sharedConstraintsAreCopiedAsPlainConstraints() {
+        GridBagConstraints shared = KoalaCell.of(1, 2, 3, 4).sharedConstraints();
+        GridBagConstraints copy = (GridBagConstraints) shared.clone();
+        assertSame(GridBagConstraints.class, copy.getClass());
+        assertEquals(3, copy.gridwidth);
+        assertNotSame(shared.insets, copy.insets);
+    }
+
+    @Test
+    public void deserializedLayoutSharesInternedConstraints() throws Exception {
+        JPanel panel = new JPanel(new KoalaLayout(1, 1));
+        panel.add(new JLabel(), KoalaCell.of(0, 0, 1, 1));
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(panel);
+        out.close();
+
+        JPanel copy = (JPanel) new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray())).readObject();
+        KoalaLayout layout = (KoalaLayout) copy.getLayout();
+        assertSame(KoalaCell.of(0, 0, 1, 1).sharedConstraints(), layout.lookupConstraints(copy.getComponent(0)));
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * This file is part of KoalaLayout.
+ *
+ * Koala layout is a flexible grid layout for Java Swing.
+ * Copyright (C) 2012 Peter Flukiger, Jean-Marc Borer
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.java.dev.koalalayout;
+
+import java.awt.Component;
+import java.awt.GridBagConstraints;
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+import javax.swing.SwingUtilities;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+
+public class KoalaLayoutAutoFlowTest {
+
+    @Test
+    public void rowFlowFillsTheConfiguredColumnsRowByRow() {
+        KoalaLayout layout = new KoalaLayout(3, 2);
+        layout.setAutoFlow(KoalaLayout.AutoFlow.ROW, false);
+        JPanel panel = new JPanel(layout);
+        for (int i = 0; i < 7; i++) {
+            panel.add(new JLabel());
+        }
+        for (int i = 0; i < 7; i++) {
+            assertCell(layout, panel, i, KoalaCell.of(i % 3, i / 3, 1, 1));
+        }
+    }
+
+    @Test
+    public void columnFlowFillsTheConfiguredRowsColumnByColumn() {
+        KoalaLayout layout = new KoalaLayout(3, 2);
+        layout.setAutoFlow(KoalaLayout.AutoFlow.COLUMN, false);
+        JPanel panel = new JPanel(layout);
+        for (int i = 0; i < 7; i++) {
+            panel.add(new JLabel());
+        }
+        for (int i = 0; i < 7; i++) {
+            assertCell(layout, panel, i, KoalaCell.of(i / 2, i % 2, 1, 1));
+        }
+    }
+
+    @Test
+    public void explicitCellsAreNotOverlapped() {
+        KoalaLayout layout = new KoalaLayout(3, 3);
+        layout.setAutoFlow(KoalaLayout.AutoFlow.ROW, false);
+        JPanel panel = new JPanel(layout);
+        panel.add(new JLabel(), KoalaCell.of(1, 0, 1, 1));
+        panel.add(new JLabel(), KoalaCell.of(0, 1, 2, 1));
+        panel.add(new JLabel());
+        // a relative position is auto placed, its span is kept
+        GridBagConstraints wide = new GridBagConstraints();
+        wide.gridx = GridBagConstraints.RELATIVE;
+        wide.gridy = GridBagConstraints.RELATIVE;
+        wide.gridwidth = 2;
+        wide.gridheight = 1;
+        wide.fill = GridBagConstraints.BOTH;
+        panel.add(new JLabel(), wide);
+        panel.add(new JLabel(), KoalaCell.of(GridBagConstraints.RELATIVE, GridBagConstraints.RELATIVE, 1, 1));
+
+        assertCell(layout, panel, 2, KoalaCell.of(0, 0, 1, 1));
+        assertCell(layout, panel, 3, KoalaCell.of(0, 2, 2, 1));
+        assertCell(layout, panel, 4, KoalaCell.of(2, 2, 1, 1));
+        assertFalse(layout.hasOverlappingComponents(panel));
+    }
+
+    @Test
+    public void denseFlowFillsHolesSparseFlowContinues() throws Exception {
+        // changes made off the event dispatch thread without the tree lock make the flow start over
+        SwingUtilities.invokeAndWait(new Runnable() {
+
+            @Override
+            public void run() {
+                checkDenseFlowFillsHolesSparseFlowContinues();
+            }
+        });
+    }
+
+    private static void checkDenseFlowFillsHolesSparseFlowContinues() {
+        for (boolean dense : new boolean[]{false, true}) {
+            KoalaLayout layout = new KoalaLayout(3, 2);
+            layout.setAutoFlow(KoalaLayout.AutoFlow.ROW, dense);
+            JPanel panel = new JPanel(layout);
+            for (int i = 0; i < 6; i++) {
+                panel.add(new JLabel());
+            }
+            panel.remove(1);
+            // a child moved away leaves a hole too
+            layout.setConstraints(panel.getComponent(3), KoalaCell.of(0, 3, 1, 1));
+            panel.add(new JLabel());
+            panel.add(new JLabel());
+
+            assertCell(layout, panel, 5, dense ? KoalaCell.of(1, 0, 1, 1) : KoalaCell.of(0, 2, 1, 1));
+            assertCell(layout, panel, 6, dense ? KoalaCell.of(1, 1, 1, 1) : KoalaCell.of(1, 2, 1, 1));
+            assertFalse(layout.hasOverlappingComponents(panel));
+        }
+    }
+
+    @Test
+    public void childrenAreNotPlacedWithoutFlow() {
+        KoalaLayout layout = new KoalaLayout(3, 2);
+        assertEquals(KoalaLayout.AutoFlow.NONE, layout.getAutoFlow());
+        JPanel panel = new JPanel(layout);
+        panel.add(new JLabel());
+        panel.add(new JLabel());
+        assertCell(layout, panel, 1, KoalaCell.of(0, 0, 1, 1));
+        try {
+            layout.setAutoFlow(null, false);
+            fail("flow missing");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void manyChildrenComeAndGoWithoutOverlaps() {
+        KoalaLayout layout = new KoalaLayout(100, 1);
+        layout.setAutoFlow(KoalaLayout.AutoFlow.ROW, true);
+        JPanel panel = new JPanel(layout);
+        for (int i = 0; i < 20000; i++) {
+            panel.add(new Component() {
+            });
+        }
+        for (int i = 0; i < 5000; i++) {
+            panel.remove(i * 3);
+        }
+        for (int i = 0; i < 5000; i++) {
+            panel.add(new Component() {
+            });
+        }
+        assertFalse(layout.hasOverlappingComponents(panel));
+        // the holes are filled, the grid did not grow
+        panel.setSize(1000, 1000);
+        layout.layoutContainer(panel);
+        assertEquals(200, layout.getGridheight());
+    }
+
+    private static void assertCell(KoalaLayout layout, JPanel panel, int index, KoalaCell expected) {
+        GridBagConstraints c = layout.getConstraints(panel.getComponent(index));
+        assertEquals("child " + index, expected, KoalaCell.of(c.gridx, c.gridy, c.gridwidth, c.gridheight));
+    }
+}
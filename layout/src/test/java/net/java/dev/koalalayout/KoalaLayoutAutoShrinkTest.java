@@ -0,0 +1,128 @@
+/*
+ * This file is part of KoalaLayout.
+ *
+ * Koala layout is a flexible grid layout for Java Swing.
+ * Copyright (C) 2012 Peter Flukiger, Jean-Marc Borer
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.java.dev.koalalayout;
+
+import java.io.ByteArrayInputStream;
+import java.io.ObjectInputStream;
+import java.util.Base64;
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+public class KoalaLayoutAutoShrinkTest {
+
+    /**
+     * a <code>new KoalaLayout(3, 2)</code> serialized by the first release, which had neither auto shrink nor auto flow
+     */
+    private static final String FIRST_RELEASE_LAYOUT =
+            "rO0ABXNyACRuZXQuamF2YS5kZXYua29hbGFsYXlvdXQuS29hbGFMYXlvdXT0gGAbBgCaFAIABEkACmdyaWRIZWlnaHRJAAlncmlk" +
+            "V2lkdGhMAA5jb21wb25lbnRUYWJsZXQAD0xqYXZhL3V0aWwvTWFwO0wAEmRlZmF1bHRDb25zdHJhaW50c3QAHUxqYXZhL2F3dC9H" +
+            "cmlkQmFnQ29uc3RyYWludHM7eHAAAAACAAAAA3NyABFqYXZhLnV0aWwuSGFzaE1hcAUH2sHDFmDRAwACRgAKbG9hZEZhY3RvckkA" +
+            "CXRocmVzaG9sZHhwP0AAAAAAAAB3CAAAABAAAAAAeHNyABtqYXZhLmF3dC5HcmlkQmFnQ29uc3RyYWludHPyHwkOz+YmzwIAEUkA" +
+            "BmFuY2hvckkABGZpbGxJAApncmlkaGVpZ2h0SQAJZ3JpZHdpZHRoSQAFZ3JpZHhJAAVncmlkeUkABWlwYWR4SQAFaXBhZHlJAAlt" +
+            "aW5IZWlnaHRJAAhtaW5XaWR0aEkACnRlbXBIZWlnaHRJAAl0ZW1wV2lkdGhJAAV0ZW1wWEkABXRlbXBZRAAHd2VpZ2h0eEQAB3dl" +
+            "aWdodHlMAAZpbnNldHN0ABFMamF2YS9hd3QvSW5zZXRzO3hwAAAACgAAAAEAAAABAAAAAQAAAAAAAAAAAAAAAAAAAAAAAAAAAAAA" +
+            "AAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAc3IAD2phdmEuYXd0Lkluc2V0c+B2MzoD46MDAgAESQAGYm90dG9tSQAE" +
+            "bGVmdEkABXJpZ2h0SQADdG9weHAAAAAAAAAAAAAAAAAAAAAA";
+
+    @Test
+    public void gridShrinksToTheChildrenOnlyWithAutoShrink() {
+        KoalaLayout layout = new KoalaLayout(2, 2);
+        JPanel panel = new JPanel(layout);
+        panel.setSize(200, 200);
+        JLabel outside = new JLabel();
+        panel.add(new JLabel(), KoalaCell.of(0, 0, 1, 1));
+        panel.add(outside, KoalaCell.of(5, 3, 1, 1));
+        assertGrid(layout, panel, 6, 4);
+
+        panel.remove(outside);
+        assertGrid(layout, panel, 6, 4);
+
+        layout.setAutoShrink(true);
+        assertGrid(layout, panel, 2, 2);
+        panel.add(new JLabel(), KoalaCell.of(3, 0, 1, 1));
+        assertGrid(layout, panel, 4, 2);
+        panel.remove(1);
+        assertGrid(layout, panel, 2, 2);
+    }
+
+    @Test
+    public void gridSetWhileShrinkingIsTheNewConfiguredGrid() {
+        KoalaLayout layout = new KoalaLayout(2, 2);
+        layout.setAutoShrink(true);
+        JPanel panel = new JPanel(layout);
+        panel.setSize(200, 200);
+        JLabel outside = new JLabel();
+        panel.add(outside, KoalaCell.of(4, 0, 1, 1));
+        assertGrid(layout, panel, 5, 2);
+
+        layout.setGridwidth(3);
+        layout.setGridheight(3);
+        panel.remove(outside);
+        assertGrid(layout, panel, 3, 3);
+    }
+
+    @Test
+    public void layoutSerializedByTheFirstReleaseIsRead() throws Exception {
+        ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(
+                Base64.getDecoder().decode(FIRST_RELEASE_LAYOUT)));
+        KoalaLayout layout = (KoalaLayout) in.readObject();
+        assertEquals(3, layout.getGridwidth());
+        assertEquals(2, layout.getGridheight());
+        assertFalse(layout.isAutoShrink());
+        assertEquals(KoalaLayout.AutoFlow.NONE, layout.getAutoFlow());
+
+        // the grid read is taken as the configured one
+        layout.setAutoShrink(true);
+        JPanel panel = new JPanel(layout);
+        panel.setSize(300, 200);
+        JLabel outside = new JLabel();
+        panel.add(new JLabel(), KoalaCell.of(0, 0, 1, 1));
+        panel.add(outside, KoalaCell.of(4, 0, 1, 1));
+        assertGrid(layout, panel, 5, 2);
+
+        panel.remove(outside);
+        assertGrid(layout, panel, 3, 2);
+    }
+
+    @Test
+    public void autoFlowOfLayoutSerializedByTheFirstReleaseUsesItsGrid() throws Exception {
+        ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(
+                Base64.getDecoder().decode(FIRST_RELEASE_LAYOUT)));
+        KoalaLayout layout = (KoalaLayout) in.readObject();
+        layout.setAutoFlow(KoalaLayout.AutoFlow.ROW, false);
+        JPanel panel = new JPanel(layout);
+        for (int i = 0; i < 4; i++) {
+            panel.add(new JLabel());
+        }
+        assertEquals(KoalaCell.of(2, 0, 1, 1), KoalaCell.of(layout.getConstraints(panel.getComponent(2))));
+        assertEquals(KoalaCell.of(0, 1, 1, 1), KoalaCell.of(layout.getConstraints(panel.getComponent(3))));
+    }
+
+    private static void assertGrid(KoalaLayout layout, JPanel panel, int gridWidth, int gridHeight) {
+        panel.invalidate();
+        layout.layoutContainer(panel);
+        assertEquals(gridWidth, layout.getGridwidth());
+        assertEquals(gridHeight, layout.getGridheight());
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ * This file is part of KoalaLayout.
+ *
+ * Koala layout is a flexible grid layout for Java Swing.
+ * Copyright (C) 2012 Peter Flukiger, Jean-Marc Borer
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.java.dev.koalalayout;
+
+import java.awt.Dimension;
+import java.awt.GridBagConstraints;
+import java.awt.Insets;
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import javax.swing.BorderFactory;
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+
+public class KoalaLayoutEngineTest {
+
+    @Test
+    public void problemSolvesLikeLayoutContainer() {
+        KoalaLayout layout = new KoalaLayout(3, 2);
+        JPanel panel = new JPanel(layout);
+        panel.setBorder(BorderFactory.createEmptyBorder(3, 5, 7, 11));
+        int[] fills = {GridBagConstraints.NONE, GridBagConstraints.HORIZONTAL, GridBagConstraints.VERTICAL,
+                GridBagConstraints.BOTH};
+        for (int i = 0; i < 6; i++) {
+            JLabel label = new JLabel();
+            label.setPreferredSize(new Dimension(10 + i * 9, 5 + i * 4));
+            panel.add(label, KoalaCell.of(i % 3, i / 3, 1, 1, GridBagConstraints.CENTER + i, fills[i % 4],
+                    new Insets(i, 1, 2, 0)).toConstraints());
+        }
+        panel.setSize(317, 143);
+        KoalaLayoutProblem problem = layout.createProblem(panel);
+        layout.layoutContainer(panel);
+
+        int[] bounds = problem.solve();
+        for (int i = 0; i < panel.getComponentCount(); i++) {
+            assertEquals(panel.getComponent(i).getBounds(),
+                    new Rectangle(bounds[i * 4], bounds[i * 4 + 1], bounds[i * 4 + 2], bounds[i * 4 + 3]));
+        }
+        assertEquals(5, problem.getViewX());
+        assertEquals(3, problem.getViewY());
+        assertEquals(317 - 5 - 11, problem.getViewWidth());
+    }
+
+    @Test
+    public void constraintsAreLaidOutLikeTheOriginalAlgorithm() {
+        List<GridBagConstraints> constraints = new ArrayList<GridBagConstraints>();
+        List<Dimension> preferred = new ArrayList<Dimension>();
+        int[] preferredSizes = new int[8];
+        for (int i = 0; i < 4; i++) {
+            GridBagConstraints c = KoalaCell.of(i, i % 2, 2 - i % 2, 1, GridBagConstraints.SOUTHEAST - i,
+                    i % 4, new Insets(1, i, 0, 2)).toConstraints();
+            constraints.add(c);
+            preferred.add(new Dimension(13 * i, 7 * i));
+            preferredSizes[i * 2] = 13 * i;
+            preferredSizes[i * 2 + 1] = 7 * i;
+        }
+        int[] bounds = KoalaLayoutEngine.layout(3, 2, constraints, 250, 90, preferredSizes, null);
+
+        Rectangle[] expected = ReferenceLayout.layout(constraints, preferred, new int[]{3, 2}, new Insets(0, 0, 0, 0),
+                250, 90);
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals(expected[i], new Rectangle(bounds[i * 4], bounds[i * 4 + 1], bounds[i * 4 + 2],
+                    bounds[i * 4 + 3]));
+        }
+    }
+
+    @Test
+    public void boundsArrayIsReused() {
+        int[] bounds = new int[8];
+        List<GridBagConstraints> constraints = Arrays.asList(KoalaCell.of(0, 0, 1, 1).toConstraints(),
+                KoalaCell.of(1, 0, 1, 1).toConstraints());
+        int[] result = KoalaLayoutEngine.layout(2, 1, constraints, 100, 40, null, bounds);
+
+        assertEquals(bounds, result);
+        assertArrayEquals(new int[]{0, 0, 50, 40, 50, 0, 50, 40}, bounds);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void sizeDependentPlanRequiresPreferredSizes() {
+        GridBagConstraints c = KoalaCell.of(0, 0, 1, 1).toConstraints();
+        c.fill = GridBagConstraints.NONE;
+        KoalaLayoutEngine.layout(1, 1, Collections.singletonList(c), 100, 100, null, null);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shortBoundsArrayIsRejected() {
+        KoalaLayoutEngine.layout(1, 1, Collections.singletonList(KoalaCell.of(0, 0, 1, 1).toConstraints()), 100, 100,
+                null, new int[3]);
+    }
+
+    @Test
+    public void batchSolvesEachProblemInOrder() {
+        List<KoalaLayoutProblem> problems = new ArrayList<KoalaLayoutProblem>();
+        for (int i = 0; i < 500; i++) {
+            GridBagConstraints c = KoalaCell.of(i % 4, 0, 1, 1, GridBagConstraints.CENTER, GridBagConstraints.NONE,
+                    new Insets(0, 0, 0, 0)).toConstraints();
+            problems.add(new KoalaLayoutProblem(4, 1, Arrays.asList(KoalaCell.of(0, 0, 1, 1).toConstraints(), c),
+                    400 + i, 100, new int[]{0, 0, i % 50, 10}));
+        }
+        ForkJoinPool pool = new ForkJoinPool(3);
+        try {
+            int[][] results = KoalaLayoutEngine.layoutAll(problems, pool);
+            assertEquals(problems.size(), results.length);
+            for (int i = 0; i < results.length; i++) {
+                assertArrayEquals(problems.get(i).solve(), results[i]);
+                if (i > 0) {
+                    assertNotSame(results[i - 1], results[i]);
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+        assertArrayEquals(problems.get(7).solve(), KoalaLayoutEngine.layoutAll(problems)[7]);
+    }
+
+    @Test
+    public void emptyBatchHasNoResults() {
+        assertEquals(0, KoalaLayoutEngine.layoutAll(Collections.<KoalaLayoutProblem>emptyList()).length);
+    }
+}
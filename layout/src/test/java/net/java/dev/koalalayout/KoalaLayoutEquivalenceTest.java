@@ -0,0 +1,195 @@
+/*
+ * This file is part of KoalaLayout.
+ *
+ * Koala layout is a flexible grid layout for Java Swing.
+ * Copyright (C) 2012 Peter Flukiger, Jean-Marc Borer
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.java.dev.koalalayout;
+
+import java.awt.Component;
+import java.awt.Dimension;
+import java.awt.GridBagConstraints;
+import java.awt.Insets;
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import javax.swing.BorderFactory;
+import javax.swing.JComponent;
+import javax.swing.JPanel;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Lays out random forms, including <code>RELATIVE</code> and <code>REMAINDER</code> placement, insertions, removals,
+ * resizes and children changing their preferred size, and compares every pass with {@link ReferenceLayout}.
+ */
+public class KoalaLayoutEquivalenceTest {
+
+    private static final int FORMS = 300;
+
+    @Test
+    public void genericPassesMatchReference() {
+        assertTrue(compareForms(false) > FORMS / 2);
+    }
+
+    @Test
+    public void specializedPassesMatchReference() {
+        assertTrue(compareForms(true) > FORMS / 2);
+    }
+
+    /**
+     * Returns the number of forms compared, forms the reference cannot lay out are skipped.
+     */
+    private static int compareForms(boolean specialized) {
+        int compared = 0;
+        for (int form = 0; form < FORMS; form++) {
+            if (compareForm(new Random(form), specialized)) {
+                compared++;
+            }
+        }
+        return compared;
+    }
+
+    private static boolean compareForm(Random random, boolean specialized) {
+        int[] grid = {1 + random.nextInt(8), 1 + random.nextInt(8)};
+        KoalaLayout layout = new KoalaLayout(grid[0], grid[1]);
+        layout.setSpecialized(specialized);
+        JPanel panel = new JPanel(layout);
+        if (random.nextBoolean()) {
+            panel.setBorder(BorderFactory.createEmptyBorder(random.nextInt(5), random.nextInt(5), random.nextInt(5),
+                    random.nextInt(5)));
+        }
+        // only displayable containers are validated
+        panel.addNotify();
+        List<GridBagConstraints> constraints = new ArrayList<GridBagConstraints>();
+        List<Cell> cells = new ArrayList<Cell>();
+        int count = random.nextInt(30);
+        for (int i = 0; i < count; i++) {
+            GridBagConstraints c = random.nextInt(4) == 0 ? new GridBagConstraints() : new KoalaConstraints();
+            c.gridx = random.nextInt(5) == 0 ? GridBagConstraints.RELATIVE : random.nextInt(grid[0] + 2);
+            c.gridy = random.nextInt(5) == 0 ? GridBagConstraints.RELATIVE : random.nextInt(grid[1] + 2);
+            c.gridwidth = random.nextInt(14) == 0 ? GridBagConstraints.REMAINDER : 1 + random.nextInt(3);
+            c.gridheight = random.nextInt(14) == 0 ? GridBagConstraints.REMAINDER : 1 + random.nextInt(3);
+            c.fill = random.nextInt(4);
+            c.anchor = GridBagConstraints.CENTER + random.nextInt(9);
+            c.insets = new Insets(random.nextInt(3), random.nextInt(3), random.nextInt(3), random.nextInt(3));
+            Cell cell = new Cell(random.nextInt(80), random.nextInt(60));
+            int choice = random.nextInt(6);
+            if (choice == 0) {
+                panel.add(cell);
+                constraints.add(new KoalaLayout().getConstraints(cell));
+                cells.add(cell);
+            } else if (choice == 1 && i > 0) {
+                int index = random.nextInt(i);
+                panel.add(cell, c, index);
+                constraints.add(index, c);
+                cells.add(index, cell);
+            } else {
+                panel.add(cell, c);
+                constraints.add(c);
+                cells.add(cell);
+            }
+            if (i > 0 && random.nextInt(10) == 0) {
+                panel.setSize(random.nextInt(900), random.nextInt(700));
+                if (!compare(panel, layout, constraints, cells, grid)) {
+                    return false;
+                }
+            }
+        }
+
+        int width = random.nextInt(900);
+        int height = random.nextInt(700);
+        for (int pass = 0; pass < 5; pass++) {
+            panel.setSize(width + pass * 37, height + (pass >= 2 ? 13 * (pass % 2) : 0));
+            if (!compare(panel, layout, constraints, cells, grid)) {
+                return false;
+            }
+            if (!cells.isEmpty() && random.nextBoolean()) {
+                Cell cell = cells.get(random.nextInt(cells.size()));
+                cell.preferred = new Dimension(random.nextInt(80), random.nextInt(60));
+                cell.invalidate();
+            }
+        }
+        if (count > 2) {
+            int index = random.nextInt(cells.size());
+            panel.remove(index);
+            constraints.remove(index);
+            cells.remove(index);
+            panel.setSize(width, height);
+            return compare(panel, layout, constraints, cells, grid);
+        }
+        return true;
+    }
+
+    /**
+     * Validates the panel and compares it with the reference, false if the reference cannot lay it out.
+     */
+    private static boolean compare(JPanel panel, KoalaLayout layout, List<GridBagConstraints> constraints,
+            List<Cell> cells, int[] grid) {
+        List<Dimension> preferred = new ArrayList<Dimension>();
+        List<Dimension> minimum = new ArrayList<Dimension>();
+        for (Cell cell : cells) {
+            preferred.add(cell.getPreferredSize());
+            minimum.add(cell.getMinimumSize());
+        }
+        Rectangle[] expected;
+        try {
+            expected = ReferenceLayout.layout(constraints, preferred, grid, panel.getInsets(), panel.getWidth(),
+                    panel.getHeight());
+        } catch (IndexOutOfBoundsException e) {
+            return false;
+        }
+        panel.validate();
+        Component[] children = panel.getComponents();
+        Rectangle[] actual = new Rectangle[children.length];
+        for (int i = 0; i < children.length; i++) {
+            actual[i] = children[i].getBounds();
+        }
+        assertArrayEquals(expected, actual);
+        assertEquals(Arrays.toString(grid), Arrays.toString(new int[]{layout.getGridwidth(), layout.getGridheight()}));
+        assertEquals(ReferenceLayout.preferredSize(constraints, preferred, grid, panel.getInsets()),
+                panel.getPreferredSize());
+        assertEquals(ReferenceLayout.minimumSize(constraints, minimum), panel.getMinimumSize());
+        return true;
+    }
+
+    /**
+     * A child sized by a field, without setting its size explicitly.
+     */
+    static final class Cell extends JComponent {
+
+        Dimension preferred;
+
+        Cell(int width, int height) {
+            preferred = new Dimension(width, height);
+        }
+
+        @Override
+        public Dimension getPreferredSize() {
+            return new Dimension(preferred);
+        }
+
+        @Override
+        public Dimension getMinimumSize() {
+            return new Dimension(preferred.width / 2, preferred.height / 2);
+        }
+    }
+}
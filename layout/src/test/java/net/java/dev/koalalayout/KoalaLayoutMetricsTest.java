@@ -0,0 +1,97 @@
+/*
+ * This file is part of KoalaLayout.
+ *
+ * Koala layout is a flexible grid layout for Java Swing.
+ * Copyright (C) 2012 Peter Flukiger, Jean-Marc Borer
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.java.dev.koalalayout;
+
+import java.lang.management.ManagementFactory;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs with <code>koalalayout.metrics</code> set, see the surefire configuration.
+ */
+public class KoalaLayoutMetricsTest {
+
+    @Test
+    public void passesAreCountedPerLayoutAndGlobally() throws Exception {
+        assertTrue(KoalaLayoutMetrics.ENABLED);
+        KoalaLayout layout = new KoalaLayout(2, 1);
+        KoalaLayoutMetrics metrics = KoalaLayoutMetrics.register(layout, "form");
+        assertNotNull(metrics);
+        long globalLayouts = KoalaLayoutMetrics.getGlobal().getLayoutCount();
+
+        JPanel panel = new JPanel(layout);
+        panel.add(new JLabel("a"), KoalaCell.of(0, 0, 1, 1));
+        panel.add(new JLabel("b"), KoalaCell.of(1, 0, 1, 1));
+        panel.add(new JLabel("c"), KoalaCell.of(2, 0, 1, 1));
+        panel.setSize(300, 100);
+        layout.layoutContainer(panel);
+        // nothing changed, the second pass does not touch any child
+        layout.layoutContainer(panel);
+        layout.preferredLayoutSize(panel);
+        layout.minimumLayoutSize(panel);
+
+        assertEquals(2, metrics.getLayoutCount());
+        assertEquals(3, metrics.getChildrenProcessed());
+        assertEquals(3, metrics.getBoundsApplied());
+        assertEquals(0, metrics.getBoundsSkipped());
+        assertEquals(1, metrics.getPreferredSizeCount());
+        assertEquals(1, metrics.getMinimumSizeCount());
+        assertEquals(1, metrics.getGridGrowthCount());
+        assertTrue(metrics.getMaxLayoutNanos() <= metrics.getLayoutNanos());
+        assertEquals(globalLayouts + 2, KoalaLayoutMetrics.getGlobal().getLayoutCount());
+
+        metrics.reset();
+        assertEquals(0, metrics.getLayoutCount());
+        assertEquals(0, metrics.getLayoutNanos());
+    }
+
+    @Test
+    public void registeredLayoutIsPublishedAsMBean() throws Exception {
+        KoalaLayout layout = new KoalaLayout(1, 1);
+        KoalaLayoutMetrics.register(layout, "dialog");
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName("net.java.dev.koalalayout:type=KoalaLayoutMetrics,name="
+                + ObjectName.quote("dialog"));
+        assertTrue(server.isRegistered(name));
+        assertTrue(server.isRegistered(new ObjectName("net.java.dev.koalalayout:type=KoalaLayoutMetrics")));
+
+        JPanel panel = new JPanel(layout);
+        panel.add(new JLabel());
+        panel.setSize(10, 10);
+        layout.layoutContainer(panel);
+        assertEquals(1L, server.getAttribute(name, "LayoutCount"));
+
+        KoalaLayoutMetrics.unregister(layout);
+        assertFalse(server.isRegistered(name));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void nameIsRequired() {
+        KoalaLayoutMetrics.register(new KoalaLayout(), null);
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * This file is part of KoalaLayout.
+ *
+ * Koala layout is a flexible grid layout for Java Swing.
+ * Copyright (C) 2012 Peter Flukiger, Jean-Marc Borer
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.java.dev.koalalayout;
+
+import java.awt.GridBagConstraints;
+import java.awt.Rectangle;
+import java.util.Arrays;
+import java.util.Collections;
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class KoalaLayoutPlanTest {
+
+    @Test
+    public void relativeAndRemainderAreResolved() {
+        GridBagConstraints first = constraints(0, 0, 1, 1);
+        GridBagConstraints next = constraints(GridBagConstraints.RELATIVE, GridBagConstraints.RELATIVE, 1, 1);
+        GridBagConstraints rest = constraints(GridBagConstraints.RELATIVE, 0, GridBagConstraints.REMAINDER, 1);
+        KoalaLayoutPlan plan = KoalaLayoutPlan.compile(Arrays.asList(first, next, rest), 4, 3);
+
+        assertEquals(3, plan.size());
+        assertEquals(4, plan.getGridWidth());
+        assertEquals(3, plan.getGridHeight());
+        assertArrayEquals(new int[]{0, 0, 1, 1}, cell(plan, 0));
+        assertArrayEquals(new int[]{1, 1, 1, 1}, cell(plan, 1));
+        assertArrayEquals(new int[]{2, 0, 2, 1}, cell(plan, 2));
+        assertTrue(plan.relative);
+    }
+
+    @Test
+    public void gridGrowsToChildrenOutsideOfIt() {
+        KoalaLayoutPlan plan = KoalaLayoutPlan.compile(Arrays.asList(constraints(0, 0, 1, 1),
+                constraints(3, 4, 2, 1)), 2, 2);
+
+        assertEquals(5, plan.getGridWidth());
+        assertEquals(5, plan.getGridHeight());
+        assertFalse(plan.relative);
+    }
+
+    @Test
+    public void onlyChildrenNotFillingBothAreSizeDependent() {
+        GridBagConstraints both = constraints(0, 0, 1, 1);
+        GridBagConstraints none = constraints(1, 0, 1, 1);
+        none.fill = GridBagConstraints.NONE;
+        KoalaLayoutPlan plan = KoalaLayoutPlan.compile(Arrays.asList(both, none), 2, 1);
+
+        assertTrue(plan.isSizeDependent());
+        assertFalse(plan.isSizeDependent(0));
+        assertTrue(plan.isSizeDependent(1));
+        assertFalse(KoalaLayoutPlan.compile(Collections.singletonList(both), 1, 1).isSizeDependent());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void emptyGridIsRejected() {
+        KoalaLayoutPlan.compile(Collections.<GridBagConstraints>emptyList(), 0, 1);
+    }
+
+    @Test
+    public void changedConstraintsMoveRelativeFollowers() {
+        KoalaLayout layout = new KoalaLayout(4, 1);
+        JPanel panel = new JPanel(layout);
+        JLabel first = new JLabel();
+        JLabel second = new JLabel();
+        panel.add(first, constraints(0, 0, 1, 1));
+        panel.add(second, constraints(GridBagConstraints.RELATIVE, 0, 1, 1));
+        panel.addNotify();
+        panel.setSize(400, 100);
+        panel.validate();
+        assertEquals(new Rectangle(100, 0, 100, 100), second.getBounds());
+
+        layout.setConstraints(first, constraints(0, 0, 2, 1));
+        panel.invalidate();
+        panel.validate();
+        assertEquals(new Rectangle(200, 0, 100, 100), second.getBounds());
+    }
+
+    private static GridBagConstraints constraints(int gridx, int gridy, int gridwidth, int gridheight) {
+        GridBagConstraints c = new KoalaConstraints();
+        c.gridx = gridx;
+        c.gridy = gridy;
+        c.gridwidth = gridwidth;
+        c.gridheight = gridheight;
+        return c;
+    }
+
+    private static int[] cell(KoalaLayoutPlan plan, int index) {
+        int offset = index * KoalaLayoutPlan.STRIDE;
+        return Arrays.copyOfRange(plan.cells, offset, offset + KoalaLayoutPlan.GRID_HEIGHT + 1);
+    }
+}
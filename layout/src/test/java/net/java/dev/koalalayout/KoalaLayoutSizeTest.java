@@ -0,0 +1,101 @@
+/*
+ * This file is part of KoalaLayout.
+ *
+ * Koala layout is a flexible grid layout for Java Swing.
+ * Copyright (C) 2012 Peter Flukiger, Jean-Marc Borer
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.java.dev.koalalayout;
+
+import java.awt.BorderLayout;
+import java.awt.Dimension;
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+import javax.swing.JTextField;
+import javax.swing.SwingUtilities;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class KoalaLayoutSizeTest {
+
+    @Test
+    public void sizeFollowsChildValidatedBeforeQuery() throws Exception {
+        // revalidate() only invalidates at once on the event dispatch thread
+        SwingUtilities.invokeAndWait(new Runnable() {
+
+            @Override
+            public void run() {
+                checkSizeFollowsChildValidatedBeforeQuery();
+            }
+        });
+    }
+
+    private static void checkSizeFollowsChildValidatedBeforeQuery() {
+        // sized by its text without setting the size explicitly
+        JLabel label = new JLabel("x") {
+
+            @Override
+            public Dimension getPreferredSize() {
+                return new Dimension(getText().length() * 100, 10);
+            }
+
+            @Override
+            public Dimension getMinimumSize() {
+                return getPreferredSize();
+            }
+        };
+        JPanel panel = new JPanel(new KoalaLayout(1, 1));
+        panel.add(label, KoalaCell.of(0, 0, 1, 1));
+        JPanel root = new JPanel(new BorderLayout());
+        root.add(panel, BorderLayout.CENTER);
+        // only displayable containers are validated
+        root.addNotify();
+        root.setSize(1000, 100);
+        root.validate();
+        assertEquals(new Dimension(100, 10), panel.getPreferredSize());
+        assertEquals(new Dimension(100, 10), panel.getMinimumSize());
+
+        // the label is valid again before the size of the panel is queried
+        label.setText("xxxxxx");
+        root.validate();
+        assertEquals(new Dimension(600, 10), panel.getPreferredSize());
+        assertEquals(new Dimension(600, 10), panel.getMinimumSize());
+    }
+
+    @Test
+    public void sizeFollowsValidateRootChild() throws Exception {
+        SwingUtilities.invokeAndWait(new Runnable() {
+
+            @Override
+            public void run() {
+                JTextField field = new JTextField("x");
+                JPanel panel = new JPanel(new KoalaLayout(1, 1));
+                panel.add(field, KoalaCell.of(0, 0, 1, 1));
+                panel.addNotify();
+                panel.setSize(1000, 100);
+                panel.validate();
+                int width = panel.getPreferredSize().width;
+
+                // a text field is a validate root, its own revalidation does not invalidate the panel
+                field.setText("a much longer text than before");
+                field.validate();
+                panel.invalidate();
+                assertTrue(panel.getPreferredSize().width > width);
+            }
+        });
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * This file is part of KoalaLayout.
+ *
+ * Koala layout is a flexible grid layout for Java Swing.
+ * Copyright (C) 2012 Peter Flukiger, Jean-Marc Borer
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.java.dev.koalalayout;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import javax.swing.JPanel;
+import org.junit.After;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class KoalaLayoutStormDetectorTest {
+
+    private final List<KoalaLayoutStormDetector.Report> reports = new ArrayList<KoalaLayoutStormDetector.Report>();
+    private final ManualScheduler scheduler = new ManualScheduler();
+
+    @After
+    public void uninstall() {
+        KoalaLayoutStormDetector.uninstall();
+    }
+
+    @Test
+    public void burstFollowedByQuietIsReported() {
+        install();
+        JPanel panel = new JPanel(new KoalaLayout(1, 1));
+        for (int i = 0; i < 500; i++) {
+            panel.invalidate();
+            panel.validate();
+        }
+        scheduler.advance(999);
+        assertTrue(reports.isEmpty());
+
+        scheduler.advance(1);
+        assertEquals(1, reports.size());
+        KoalaLayoutStormDetector.Report report = reports.get(0);
+        assertSame(panel, report.getContainer());
+        assertEquals(1000, report.getDurationMillis());
+        // the storm starts with the pass exceeding the threshold
+        assertEquals(400, report.getCount(KoalaLayoutStormDetector.Kind.INVALIDATION));
+        assertEquals(1, report.getOffenders().size());
+
+        scheduler.advance(5000);
+        assertEquals(1, reports.size());
+    }
+
+    @Test
+    public void quietContainerIsNotReported() {
+        install();
+        JPanel panel = new JPanel(new KoalaLayout(1, 1));
+        for (int i = 0; i < 50; i++) {
+            panel.invalidate();
+        }
+        scheduler.advance(5000);
+        assertTrue(reports.isEmpty());
+    }
+
+    @Test
+    public void passesSpreadOverMoreThanTheWindowAreNotAStorm() {
+        install();
+        JPanel panel = new JPanel(new KoalaLayout(1, 1));
+        for (int i = 0; i < 1000; i++) {
+            panel.invalidate();
+            scheduler.advance(11);
+        }
+        assertTrue(reports.isEmpty());
+    }
+
+    @Test
+    public void reportIsWrittenIndependentlyOfTheDefaultLocale() {
+        install();
+        JPanel panel = new JPanel(new KoalaLayout(1, 1));
+        for (int i = 0; i < 150; i++) {
+            panel.invalidate();
+        }
+        scheduler.advance(1000);
+        Locale locale = Locale.getDefault();
+        try {
+            // upper case I is lower cased to a dotless i in Turkish
+            Locale.setDefault(new Locale("tr", "TR"));
+            assertTrue(reports.get(0).toString().contains(" 50 invalidation"));
+        } finally {
+            Locale.setDefault(locale);
+        }
+    }
+
+    private void install() {
+        KoalaLayoutStormDetector.install(100, 1000, 1, new KoalaLayoutStormDetector.Listener() {
+
+            @Override
+            public void stormDetected(KoalaLayoutStormDetector.Report report) {
+                reports.add(report);
+            }
+        }, scheduler);
+    }
+
+    /**
+     * A clock advanced by the test, running the reports due on the thread of the test.
+     */
+    private static final class ManualScheduler implements KoalaLayoutStormDetector.Scheduler {
+
+        private long now = 1000000000L;
+        private final List<Long> dueTimes = new ArrayList<Long>();
+        private final List<Runnable> tasks = new ArrayList<Runnable>();
+
+        @Override
+        public long nanoTime() {
+            return now;
+        }
+
+        @Override
+        public void schedule(Runnable report, long delayMillis) {
+            dueTimes.add(now + delayMillis * 1000000L);
+            tasks.add(report);
+        }
+
+        void advance(long millis) {
+            now += millis * 1000000L;
+            for (int i = 0; i < tasks.size(); i++) {
+                if (dueTimes.get(i) <= now) {
+                    Runnable task = tasks.remove(i);
+                    dueTimes.remove(i--);
+                    task.run();
+                }
+            }
+        }
+    }
+}
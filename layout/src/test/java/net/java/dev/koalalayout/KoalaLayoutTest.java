@@ -0,0 +1,421 @@
+/*
+ * This file is part of KoalaLayout.
+ *
+ * Koala layout is a flexible grid layout for Java Swing.
+ * Copyright (C) 2012 Peter Flukiger, Jean-Marc Borer
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.java.dev.koalalayout;
+
+import java.awt.Component;
+import java.awt.Dimension;
+import java.awt.GridBagConstraints;
+import java.awt.Insets;
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.Collections;
+import javax.swing.BorderFactory;
+import javax.swing.JComponent;
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+import org.junit.Assume;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class KoalaLayoutTest {
+
+    @Test
+    public void resizePassesDoNotAllocate() {
+        Assume.assumeTrue(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled());
+        KoalaLayout layout = new KoalaLayout(4, 4);
+        JPanel panel = new JPanel(layout);
+        for (int i = 0; i < 16; i++) {
+            panel.add(new FixedSize(30, 20), KoalaCell.of(i % 4, i / 4, 1, 1, GridBagConstraints.WEST,
+                    GridBagConstraints.HORIZONTAL, new Insets(1, 2, 1, 2)).toConstraints());
+        }
+        for (int pass = 0; pass < 2000; pass++) {
+            panel.setSize(400 + pass % 50, 300 + pass % 30);
+            layout.layoutContainer(panel);
+        }
+
+        long thread = Thread.currentThread().getId();
+        long before = threads.getThreadAllocatedBytes(thread);
+        for (int pass = 0; pass < 1000; pass++) {
+            panel.setSize(400 + pass % 50, 300 + pass % 30);
+            layout.layoutContainer(panel);
+        }
+        long allocated = threads.getThreadAllocatedBytes(thread) - before;
+        // a pass allocating even one small object per child would allocate far more
+        assertTrue("allocated " + allocated + " bytes", allocated < 16 * 1000);
+    }
+
+    /**
+     * A child whose size queries allocate nothing, so that only the layout itself is measured.
+     */
+    private static final class FixedSize extends JComponent {
+
+        private final Dimension size;
+
+        FixedSize(int width, int height) {
+            size = new Dimension(width, height);
+        }
+
+        @Override
+        public Dimension getPreferredSize() {
+            return size;
+        }
+
+        @Override
+        public Dimension getMinimumSize() {
+            return size;
+        }
+    }
+
+    @Test
+    public void childWithNewPreferredSizeIsLaidOutAgain() {
+        for (boolean specialized : new boolean[]{false, true}) {
+            KoalaLayout layout = new KoalaLayout(1, 1);
+            layout.setSpecialized(specialized);
+            JPanel panel = new JPanel(layout);
+            JLabel label = new JLabel();
+            label.setPreferredSize(new Dimension(80, 80));
+            panel.add(label, KoalaCell.of(0, 0, 1, 1, GridBagConstraints.CENTER, GridBagConstraints.NONE,
+                    new Insets(0, 0, 0, 0)));
+            // only displayable containers are validated
+            panel.addNotify();
+            panel.setSize(200, 200);
+            panel.validate();
+            assertEquals(new Rectangle(60, 60, 80, 80), label.getBounds());
+
+            // setting the size does not invalidate the label itself
+            label.setPreferredSize(new Dimension(20, 20));
+            panel.invalidate();
+            panel.validate();
+            assertEquals(new Rectangle(90, 90, 20, 20), label.getBounds());
+        }
+    }
+
+    @Test
+    public void childrenFollowTemplateAfterRemoveAndInsert() {
+        KoalaLayoutTemplate template = new KoalaLayoutTemplate(3, 1, Arrays.asList(
+                KoalaCell.of(0, 0, 1, 1).toConstraints(), KoalaCell.of(1, 0, 1, 1).toConstraints(),
+                KoalaCell.of(2, 0, 1, 1).toConstraints()));
+        JPanel panel = new JPanel(new KoalaLayout(template));
+        JLabel a0 = new JLabel();
+        JLabel a1 = new JLabel();
+        JLabel a2 = new JLabel();
+        panel.add(a0);
+        panel.add(a1);
+        panel.add(a2);
+        panel.addNotify();
+        panel.setSize(300, 100);
+        panel.validate();
+        assertEquals(new Rectangle(200, 0, 100, 100), a2.getBounds());
+
+        panel.remove(a1);
+        panel.validate();
+        assertEquals(new Rectangle(100, 0, 100, 100), a2.getBounds());
+
+        panel.add(a1, 0);
+        panel.validate();
+        assertEquals(new Rectangle(0, 0, 100, 100), a1.getBounds());
+        assertEquals(new Rectangle(100, 0, 100, 100), a0.getBounds());
+        assertEquals(new Rectangle(200, 0, 100, 100), a2.getBounds());
+    }
+
+    @Test
+    public void subclassChangesConstraintsThroughMutators() {
+        KoalaLayout layout = new KoalaLayout(2, 1) {
+
+            @Override
+            public void addLayoutComponent(Component comp, Object constraints) {
+                putConstraints(comp, KoalaCell.of(1, 0, 1, 1).toConstraints());
+            }
+        };
+        JPanel panel = new JPanel(layout);
+        JLabel label = new JLabel();
+        panel.add(label);
+        panel.addNotify();
+        panel.setSize(200, 100);
+        panel.validate();
+        assertEquals(new Rectangle(100, 0, 100, 100), label.getBounds());
+
+        layout.dropConstraints(label);
+        panel.invalidate();
+        panel.validate();
+        assertEquals(new Rectangle(0, 0, 100, 100), label.getBounds());
+    }
+
+    @Test
+    public void constraintsFollowChildrenThroughInsertRemoveAndReorder() {
+        KoalaLayout layout = new KoalaLayout(4, 1);
+        JPanel panel = new JPanel(layout);
+        JLabel a = new JLabel();
+        JLabel b = new JLabel();
+        JLabel c = new JLabel();
+        JLabel relative = new JLabel();
+        panel.add(a, KoalaCell.of(2, 0, 1, 1).toConstraints());
+        panel.add(b, KoalaCell.of(0, 0, 1, 1).toConstraints());
+        panel.add(c, KoalaCell.of(3, 0, 1, 1).toConstraints(), 1);
+        panel.addNotify();
+        panel.setSize(400, 100);
+        panel.validate();
+        assertEquals(new Rectangle(200, 0, 100, 100), a.getBounds());
+        assertEquals(new Rectangle(0, 0, 100, 100), b.getBounds());
+        assertEquals(new Rectangle(300, 0, 100, 100), c.getBounds());
+
+        // reordering does not notify the layout manager
+        panel.setComponentZOrder(b, 0);
+        GridBagConstraints follow = KoalaCell.of(0, 0, 1, 1).toConstraints();
+        follow.gridx = GridBagConstraints.RELATIVE;
+        panel.add(relative, follow, 1);
+        panel.validate();
+        assertEquals(new Rectangle(0, 0, 100, 100), b.getBounds());
+        assertEquals(new Rectangle(100, 0, 100, 100), relative.getBounds());
+        assertEquals(new Rectangle(200, 0, 100, 100), a.getBounds());
+        assertEquals(2, layout.getConstraints(a).gridx);
+
+        panel.remove(b);
+        panel.validate();
+        assertEquals(new Rectangle(0, 0, 100, 100), relative.getBounds());
+        assertEquals(new Rectangle(300, 0, 100, 100), c.getBounds());
+        assertEquals(3, layout.getConstraints(c).gridx);
+    }
+
+    @Test
+    public void resizeAlongOneAxisMatchesFreshLayout() {
+        for (boolean specialized : new boolean[]{false, true}) {
+            KoalaLayout layout = new KoalaLayout(3, 3);
+            layout.setSpecialized(specialized);
+            JPanel panel = form(layout);
+            int[][] sizes = {{300, 300}, {450, 300}, {450, 120}, {451, 120}, {451, 333}, {90, 333}};
+            for (int[] size : sizes) {
+                panel.setSize(size[0], size[1]);
+                layout.layoutContainer(panel);
+
+                KoalaLayout freshLayout = new KoalaLayout(3, 3);
+                JPanel fresh = form(freshLayout);
+                fresh.setSize(size[0], size[1]);
+                freshLayout.layoutContainer(fresh);
+                for (int i = 0; i < panel.getComponentCount(); i++) {
+                    assertEquals(fresh.getComponent(i).getBounds(), panel.getComponent(i).getBounds());
+                }
+            }
+        }
+    }
+
+    @Test
+    public void widthChangeDoesNotAskChildrenFillingWidth() {
+        final int[] queries = new int[1];
+        KoalaLayout layout = new KoalaLayout(2, 1);
+        JPanel panel = new JPanel(layout);
+        JComponent child = new JComponent() {
+
+            @Override
+            public Dimension getPreferredSize() {
+                queries[0]++;
+                return new Dimension(10, 10);
+            }
+        };
+        panel.add(child, KoalaCell.of(0, 0, 1, 1, GridBagConstraints.NORTH, GridBagConstraints.HORIZONTAL,
+                new Insets(0, 0, 0, 0)).toConstraints());
+        // only displayable children are validated, and only valid ones are known to keep their preferred size
+        panel.addNotify();
+        panel.setSize(200, 100);
+        panel.validate();
+        queries[0] = 0;
+
+        panel.setSize(300, 100);
+        panel.validate();
+        assertEquals(new Rectangle(0, 0, 150, 10), child.getBounds());
+        assertEquals(0, queries[0]);
+
+        panel.setSize(300, 50);
+        panel.validate();
+        assertTrue(queries[0] > 0);
+    }
+
+    /**
+     * A form with one child per fill and anchor mix, the same for every call.
+     */
+    private static JPanel form(KoalaLayout layout) {
+        JPanel panel = new JPanel(layout);
+        int[] fills = {GridBagConstraints.NONE, GridBagConstraints.HORIZONTAL, GridBagConstraints.VERTICAL,
+                GridBagConstraints.BOTH};
+        for (int i = 0; i < 9; i++) {
+            panel.add(new FixedSize(20 + i * 7, 15 + i * 3), KoalaCell.of(i % 3, i / 3, 1 + i % 2, 1,
+                    GridBagConstraints.CENTER + i, fills[i % 4], new Insets(i % 3, 1, 2, i % 2)).toConstraints());
+        }
+        return panel;
+    }
+
+    @Test
+    public void onlyChangedChildrenAreMovedWithoutRepaintingTheContainer() {
+        final int[] repaints = new int[1];
+        KoalaLayout layout = new KoalaLayout(2, 2);
+        JPanel panel = new JPanel(layout) {
+
+            @Override
+            public void repaint(long tm, int x, int y, int width, int height) {
+                repaints[0]++;
+            }
+        };
+        JLabel top = new JLabel();
+        JLabel bottom = new JLabel();
+        panel.add(top, KoalaCell.of(0, 0, 2, 1).toConstraints());
+        panel.add(bottom, KoalaCell.of(0, 1, 1, 1).toConstraints());
+        panel.setSize(200, 200);
+        layout.layoutContainer(panel);
+        assertEquals(2, layout.getMovedComponentCount());
+
+        // only the width of the top child changes when one pixel is added
+        panel.setSize(201, 200);
+        repaints[0] = 0;
+        layout.layoutContainer(panel);
+        assertEquals(1, layout.getMovedComponentCount());
+        assertEquals(new Rectangle(0, 0, 201, 100), top.getBounds());
+        assertEquals(0, repaints[0]);
+    }
+
+    @Test
+    public void pointsMapToCellsAndGridLines() {
+        KoalaLayout layout = new KoalaLayout(3, 2);
+        JPanel panel = new JPanel(layout);
+        panel.setBorder(BorderFactory.createEmptyBorder(10, 20, 0, 0));
+        panel.setSize(320, 210);
+
+        assertEquals(new Point(1, 0), layout.cellAt(panel, new Point(20 + 150, 10 + 50)));
+        assertEquals(new Point(0, 0), layout.cellAt(panel, new Point(-5, -5)));
+        assertEquals(new Point(2, 1), layout.cellAt(panel, new Point(1000, 1000)));
+
+        assertEquals(new Point(1, 0), layout.gridLineAt(panel, new Point(20 + 140, 10 + 40)));
+        assertEquals(new Point(2, 1), layout.gridLineAt(panel, new Point(20 + 160, 10 + 60)));
+        assertEquals(new Point(3, 2), layout.gridLineAt(panel, new Point(20 + 299, 10 + 199)));
+
+        assertEquals(new Rectangle(120, 10, 200, 200), layout.cellBounds(panel, 1, 0, 2, 2));
+    }
+
+    @Test
+    public void cellMappingMatchesLaidOutChildren() {
+        KoalaLayout layout = new KoalaLayout(7, 3);
+        JPanel panel = new JPanel(layout);
+        panel.setBorder(BorderFactory.createEmptyBorder(3, 5, 1, 2));
+        for (int i = 0; i < 21; i++) {
+            panel.add(new JLabel(), KoalaCell.of(i % 7, i / 7, 1, 1).toConstraints());
+        }
+        // sizes not divisible by the grid, so that cells differ by one pixel
+        panel.setSize(5 + 303 + 2, 3 + 104 + 1);
+        layout.layoutContainer(panel);
+
+        for (int i = 0; i < 21; i++) {
+            Rectangle bounds = panel.getComponent(i).getBounds();
+            assertEquals(bounds, layout.cellBounds(panel, i % 7, i / 7, 1, 1));
+            Point cell = new Point(i % 7, i / 7);
+            assertEquals(cell, layout.cellAt(panel, bounds.getLocation()));
+            assertEquals(cell, layout.cellAt(panel, new Point(bounds.x + bounds.width - 1, bounds.y + bounds.height - 1)));
+            assertEquals(cell, layout.gridLineAt(panel, bounds.getLocation()));
+        }
+    }
+
+    @Test
+    public void sizeIndependenceFollowsConstraintsReplacedInBackground() throws Exception {
+        final KoalaLayout layout = new KoalaLayout(2, 1);
+        JPanel panel = new JPanel(layout);
+        final JLabel label = new JLabel();
+        panel.add(label, KoalaCell.of(0, 0, 1, 1));
+        assertTrue(layout.isSizeIndependent(panel));
+
+        Thread background = new Thread(new Runnable() {
+
+            @Override
+            public void run() {
+                layout.replaceConstraints(Collections.singletonMap(label, KoalaCell.of(1, 0, 1, 1,
+                        GridBagConstraints.CENTER, GridBagConstraints.NONE, new Insets(0, 0, 0, 0))));
+            }
+        });
+        background.start();
+        background.join();
+        assertFalse(layout.isSizeIndependent(panel));
+    }
+
+    @Test
+    public void templateLayoutSharedByTwoContainers() {
+        GridBagConstraints centered = KoalaCell.of(0, 0, 1, 1, GridBagConstraints.CENTER, GridBagConstraints.NONE,
+                new Insets(0, 0, 0, 0)).toConstraints();
+        KoalaLayout layout = new KoalaLayout(new KoalaLayoutTemplate(1, 1, Collections.singletonList(centered)));
+        JPanel small = new JPanel(layout);
+        JPanel large = new JPanel(layout);
+        small.add(new FixedSize(20, 20));
+        large.add(new FixedSize(60, 60));
+        small.setSize(200, 100);
+        large.setSize(200, 100);
+        // valid children keep their preferred size, so only a new view would lay them out again
+        small.addNotify();
+        large.addNotify();
+        small.getComponent(0).validate();
+        large.getComponent(0).validate();
+
+        layout.layoutContainer(small);
+        layout.layoutContainer(large);
+        assertEquals(new Rectangle(70, 20, 60, 60), large.getComponent(0).getBounds());
+        layout.layoutContainer(small);
+        assertEquals(new Rectangle(90, 40, 20, 20), small.getComponent(0).getBounds());
+
+        // the last pass of the other container does not count as a pass of this one
+        large.getComponent(0).setBounds(0, 0, 1, 1);
+        layout.preferredLayoutSize(large);
+        layout.layoutContainer(large);
+        assertEquals(new Rectangle(70, 20, 60, 60), large.getComponent(0).getBounds());
+    }
+
+    @Test
+    public void specializedKernelMatchesGenericPassForEveryFillAndAnchor() {
+        int[] fills = {GridBagConstraints.NONE, GridBagConstraints.HORIZONTAL, GridBagConstraints.VERTICAL,
+                GridBagConstraints.BOTH};
+        KoalaLayout generic = new KoalaLayout(6, 6);
+        KoalaLayout specialized = new KoalaLayout(6, 6);
+        specialized.setSpecialized(true);
+        JPanel genericPanel = new JPanel(generic);
+        JPanel specializedPanel = new JPanel(specialized);
+        for (int fill = 0; fill < fills.length; fill++) {
+            for (int anchor = GridBagConstraints.CENTER; anchor <= GridBagConstraints.NORTHWEST; anchor++) {
+                int i = genericPanel.getComponentCount();
+                GridBagConstraints c = KoalaCell.of(i % 6, i / 6, 1, 1, anchor, fills[fill],
+                        new Insets(i % 3, i % 4, i % 5, i % 2)).toConstraints();
+                // some children are larger than their cells
+                genericPanel.add(new FixedSize(5 + i * 3, 4 + i * 2), c);
+                specializedPanel.add(new FixedSize(5 + i * 3, 4 + i * 2), c);
+            }
+        }
+        int[][] sizes = {{600, 600}, {601, 437}, {97, 53}, {1000, 53}};
+        for (int[] size : sizes) {
+            genericPanel.setSize(size[0], size[1]);
+            specializedPanel.setSize(size[0], size[1]);
+            generic.layoutContainer(genericPanel);
+            specialized.layoutContainer(specializedPanel);
+            for (int i = 0; i < genericPanel.getComponentCount(); i++) {
+                assertEquals("child " + i + " at " + size[0] + "x" + size[1], genericPanel.getComponent(i).getBounds(),
+                        specializedPanel.getComponent(i).getBounds());
+            }
+        }
+    }
+}
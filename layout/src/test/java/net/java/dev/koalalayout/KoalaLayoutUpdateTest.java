@@ -0,0 +1,252 @@
+/*
+ * This file is part of KoalaLayout.
+ *
+ * Koala layout is a flexible grid layout for Java Swing.
+ * Copyright (C) 2012 Peter Flukiger, Jean-Marc Borer
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.java.dev.koalalayout;
+
+import java.awt.Component;
+import java.awt.Dimension;
+import java.awt.GridBagConstraints;
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import javax.swing.JComponent;
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+import javax.swing.SwingUtilities;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class KoalaLayoutUpdateTest {
+
+    private static final KoalaCell[] CELLS = {
+        KoalaCell.of(0, 0, 2, 1), KoalaCell.of(2, 0, 2, 2), KoalaCell.of(0, 1, 1, 3), KoalaCell.of(1, 2, 3, 2)
+    };
+
+    @Test
+    public void passesAreSkippedUntilTheUpdateIsCommitted() throws Exception {
+        // revalidate() only invalidates at once on the event dispatch thread
+        SwingUtilities.invokeAndWait(new Runnable() {
+
+            @Override
+            public void run() {
+                JPanel expected = new JPanel(new KoalaLayout(4, 4));
+                for (KoalaCell cell : CELLS) {
+                    expected.add(new FixedSize(20, 10), cell);
+                }
+                expected.setSize(400, 300);
+                expected.doLayout();
+
+                KoalaLayout layout = new KoalaLayout(4, 4);
+                JPanel panel = new JPanel(layout);
+                panel.addNotify();
+                panel.setSize(400, 300);
+                panel.validate();
+                layout.beginUpdate(panel);
+                try {
+                    assertTrue(layout.isUpdating());
+                    for (KoalaCell cell : CELLS) {
+                        panel.add(new FixedSize(20, 10), cell);
+                    }
+                    panel.remove(0);
+                    panel.add(new FixedSize(20, 10), CELLS[0], 0);
+                    panel.doLayout();
+                    for (Component comp : panel.getComponents()) {
+                        assertEquals(new Rectangle(), comp.getBounds());
+                    }
+                } finally {
+                    layout.commitUpdate(panel);
+                }
+                assertFalse(layout.isUpdating());
+                assertFalse(panel.isValid());
+                panel.validate();
+                assertLaidOutAlike(expected, panel);
+            }
+        });
+    }
+
+    @Test
+    public void nestedUpdatesEndWithTheOutermostCommit() {
+        KoalaLayout layout = new KoalaLayout(4, 4);
+        JPanel panel = new JPanel(layout);
+        panel.setSize(400, 300);
+        layout.beginUpdate(panel);
+        layout.addAll(panel, new Component[]{new FixedSize(20, 10), new FixedSize(20, 10)},
+                new Object[]{CELLS[0], CELLS[1]});
+        assertTrue(layout.isUpdating());
+        panel.doLayout();
+        assertEquals(new Rectangle(), panel.getComponent(0).getBounds());
+
+        layout.commitUpdate(panel);
+        assertFalse(layout.isUpdating());
+        panel.doLayout();
+        assertEquals(CELLS[0], KoalaCell.of(layout.getConstraints(panel.getComponent(0))));
+        assertFalse(new Rectangle().equals(panel.getComponent(0).getBounds()));
+    }
+
+    @Test
+    public void updatesAreCheckedAgainstTheirContainer() {
+        KoalaLayout layout = new KoalaLayout(4, 4);
+        JPanel panel = new JPanel(layout);
+        JPanel other = new JPanel(layout);
+        try {
+            layout.beginUpdate(new JPanel());
+            fail("container does not use the layout");
+        } catch (IllegalArgumentException expected) {
+        }
+        try {
+            layout.commitUpdate(panel);
+            fail("no update in progress");
+        } catch (IllegalArgumentException expected) {
+        }
+        layout.beginUpdate(panel);
+        try {
+            layout.beginUpdate(other);
+            fail("another container is being updated");
+        } catch (IllegalArgumentException expected) {
+        }
+        try {
+            layout.commitUpdate(other);
+            fail("the update is of another container");
+        } catch (IllegalArgumentException expected) {
+        }
+        layout.commitUpdate(panel);
+        assertFalse(layout.isUpdating());
+    }
+
+    @Test
+    public void addAllMatchesSingleAdds() {
+        for (boolean withConstraints : new boolean[]{true, false}) {
+            KoalaLayout single = new KoalaLayout(4, 4);
+            JPanel expected = new JPanel(single);
+            KoalaLayout batch = new KoalaLayout(4, 4);
+            JPanel panel = new JPanel(batch);
+            Component[] components = new Component[CELLS.length];
+            for (int i = 0; i < CELLS.length; i++) {
+                expected.add(new FixedSize(20 + i, 10), withConstraints ? CELLS[i] : null);
+                components[i] = new FixedSize(20 + i, 10);
+            }
+            batch.addAll(panel, components, withConstraints ? CELLS : null);
+
+            assertEquals(CELLS.length, panel.getComponentCount());
+            for (int i = 0; i < CELLS.length; i++) {
+                assertEquals(components[i], panel.getComponent(i));
+                assertEquals(KoalaCell.of(single.getConstraints(expected.getComponent(i))),
+                        KoalaCell.of(batch.getConstraints(components[i])));
+            }
+            expected.setSize(400, 300);
+            expected.doLayout();
+            panel.setSize(400, 300);
+            panel.doLayout();
+            assertLaidOutAlike(expected, panel);
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void constraintsChangedInBatchArePublishedOnceByTheCommit() {
+        final List<Map<Component, GridBagConstraints>> published = new ArrayList<Map<Component, GridBagConstraints>>();
+        KoalaLayout layout = new KoalaLayout(100, 1000) {
+
+            @Override
+            public void addLayoutComponent(Component comp, Object constraints) {
+                super.addLayoutComponent(comp, constraints);
+                published.add(componentTable);
+            }
+        };
+        JPanel panel = new JPanel(layout);
+        JLabel removed = new JLabel();
+        panel.add(removed, CELLS[0]);
+        Map<Component, GridBagConstraints> before = layout.getConstraintsSnapshot();
+
+        // copying the table for each of them would take minutes
+        int count = 100000;
+        Component[] components = new Component[count];
+        KoalaCell[] cells = new KoalaCell[count];
+        for (int i = 0; i < count; i++) {
+            components[i] = new JLabel();
+            cells[i] = KoalaCell.of(i % 100, i / 100, 1, 1);
+        }
+        layout.beginUpdate(panel);
+        try {
+            layout.addAll(panel, components, cells);
+            panel.remove(removed);
+            layout.setConstraints(components[0], CELLS[3]);
+            // the updating thread sees its changes, the table is the one from before the batch
+            assertEquals(CELLS[3], KoalaCell.of(layout.getConstraints(components[0])));
+            assertEquals(cells[1], KoalaCell.of(layout.getConstraints(components[1])));
+            for (Map<Component, GridBagConstraints> table : published) {
+                assertSame(before.get(removed), table.get(removed));
+            }
+        } finally {
+            layout.commitUpdate(panel);
+        }
+
+        Map<Component, GridBagConstraints> after = layout.getConstraintsSnapshot();
+        assertEquals(count, after.size());
+        assertFalse(after.containsKey(removed));
+        assertEquals(CELLS[3], KoalaCell.of(after.get(components[0])));
+        for (int i = 1; i < count; i++) {
+            assertEquals(cells[i], KoalaCell.of(after.get(components[i])));
+        }
+    }
+
+    @Test
+    public void addAllNeedsOneConstraintPerComponent() {
+        KoalaLayout layout = new KoalaLayout(4, 4);
+        JPanel panel = new JPanel(layout);
+        try {
+            layout.addAll(panel, new Component[]{new FixedSize(1, 1), new FixedSize(1, 1)}, new Object[]{CELLS[0]});
+            fail("constraints missing");
+        } catch (IllegalArgumentException expected) {
+        }
+        assertEquals(0, panel.getComponentCount());
+        assertFalse(layout.isUpdating());
+    }
+
+    private static void assertLaidOutAlike(JPanel expected, JPanel actual) {
+        assertEquals(expected.getComponentCount(), actual.getComponentCount());
+        for (int i = 0; i < expected.getComponentCount(); i++) {
+            assertEquals("child " + i, expected.getComponent(i).getBounds(), actual.getComponent(i).getBounds());
+        }
+    }
+
+    private static final class FixedSize extends JComponent {
+
+        private final Dimension size;
+
+        FixedSize(int width, int height) {
+            size = new Dimension(width, height);
+        }
+
+        @Override
+        public Dimension getPreferredSize() {
+            return size;
+        }
+
+        @Override
+        public Dimension getMinimumSize() {
+            return size;
+        }
+    }
+}
@@ -0,0 +1,186 @@
+/*
+ * This file is part of KoalaLayout.
+ *
+ * Koala layout is a flexible grid layout for Java Swing.
+ * Copyright (C) 2012 Peter Flukiger, Jean-Marc Borer
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.java.dev.koalalayout;
+
+import java.awt.Component;
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.HashSet;
+import java.util.Set;
+import javax.swing.JLabel;
+import javax.swing.JScrollPane;
+import javax.swing.SwingUtilities;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class KoalaVirtualGridTest {
+
+    @Test
+    public void onlyVisibleCellsAreRealizedAndRecycled() throws Exception {
+        SwingUtilities.invokeAndWait(new Runnable() {
+
+            @Override
+            public void run() {
+                KoalaVirtualGrid grid = new KoalaVirtualGrid(100000, 100000, 20, 10, new LabelRenderer());
+                JScrollPane scrollPane = scrollPane(grid);
+                assertEquals(100, grid.getRealizedCellCount());
+                assertLaidOutInTheirCells(grid);
+
+                Set<Component> before = visibleChildren(grid);
+                scrollPane.getViewport().setViewPosition(new Point(20 * 50000 + 10, 10 * 70000));
+                scrollPane.validate();
+                // eleven columns intersect the view now, ten of them reuse the components of the hidden cells
+                assertEquals(110, grid.getRealizedCellCount());
+                assertTrue(grid.getComponentCount() <= 2 * 110);
+                assertTrue(visibleChildren(grid).containsAll(before));
+                assertLaidOutInTheirCells(grid);
+                assertEquals("50000,70000", ((JLabel) grid.getComponentAt(20 * 50000 + 10, 10 * 70000)).getText());
+            }
+        });
+    }
+
+    @Test
+    public void cellsAreRealizedOutsideOfLayoutPasses() throws Exception {
+        SwingUtilities.invokeAndWait(new Runnable() {
+
+            @Override
+            public void run() {
+                KoalaVirtualGrid grid = new KoalaVirtualGrid(4, 4, 20, 10, new LabelRenderer());
+                grid.setSize(80, 40);
+                assertEquals(16, grid.getComponentCount());
+
+                grid.doLayout();
+                assertEquals(16, grid.getComponentCount());
+                assertLaidOutInTheirCells(grid);
+            }
+        });
+    }
+
+    @Test
+    public void areasMaySpanSeveralCells() throws Exception {
+        SwingUtilities.invokeAndWait(new Runnable() {
+
+            @Override
+            public void run() {
+                KoalaVirtualGrid grid = new KoalaVirtualGrid(1000, 1000, 20, 10, new LabelRenderer() {
+
+                    @Override
+                    public KoalaCell getCellArea(KoalaVirtualGrid grid, int column, int row) {
+                        return KoalaCell.of(column - column % 2, row, 2, 1);
+                    }
+                });
+                JScrollPane scrollPane = scrollPane(grid);
+                scrollPane.getViewport().setViewPosition(new Point(20 * 301, 0));
+                scrollPane.validate();
+                // the area starting left of the view is realized as well
+                assertEquals(6 * 10, grid.getRealizedCellCount());
+                JLabel label = (JLabel) grid.getComponentAt(20 * 301, 0);
+                assertEquals("300,0", label.getText());
+                assertEquals(grid.getCellBounds(300, 0).union(grid.getCellBounds(301, 0)), label.getBounds());
+            }
+        });
+    }
+
+    @Test
+    public void rendererIsSerializedOnlyWhenSerializable() throws Exception {
+        KoalaVirtualGrid grid = new KoalaVirtualGrid(3, 3, 20, 10, new LabelRenderer());
+        grid.setSize(60, 30);
+        KoalaVirtualGrid copy = serializeAndRead(grid);
+        assertNotNull(copy.getCellRenderer());
+        assertEquals(9, copy.getRealizedCellCount());
+
+        grid.setCellRenderer(new KoalaCellRenderer() {
+
+            @Override
+            public Component getCellComponent(KoalaVirtualGrid grid, Component recycled, int column, int row) {
+                return new JLabel();
+            }
+        });
+        copy = serializeAndRead(grid);
+        assertNull(copy.getCellRenderer());
+        assertEquals(9, copy.getRealizedCellCount());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void layoutCannotBeReplaced() {
+        new KoalaVirtualGrid(3, 3, 20, 10, new LabelRenderer()).setLayout(null);
+    }
+
+    private static JScrollPane scrollPane(KoalaVirtualGrid grid) {
+        JScrollPane scrollPane = new JScrollPane(grid, JScrollPane.VERTICAL_SCROLLBAR_NEVER,
+                JScrollPane.HORIZONTAL_SCROLLBAR_NEVER);
+        scrollPane.setBorder(null);
+        scrollPane.addNotify();
+        scrollPane.setSize(200, 100);
+        scrollPane.validate();
+        return scrollPane;
+    }
+
+    private static void assertLaidOutInTheirCells(KoalaVirtualGrid grid) {
+        for (Component comp : visibleChildren(grid)) {
+            String[] cell = ((JLabel) comp).getText().split(",");
+            assertEquals(grid.getCellBounds(Integer.parseInt(cell[0]), Integer.parseInt(cell[1])), comp.getBounds());
+        }
+    }
+
+    private static Set<Component> visibleChildren(KoalaVirtualGrid grid) {
+        Set<Component> visible = new HashSet<Component>();
+        for (Component comp : grid.getComponents()) {
+            if (comp.isVisible()) {
+                visible.add(comp);
+            }
+        }
+        return visible;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T serializeAndRead(T object) throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(object);
+        out.close();
+        return (T) new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray())).readObject();
+    }
+
+    /**
+     * Shows the column and row of each cell, recycling the labels of hidden cells.
+     */
+    private static class LabelRenderer implements KoalaCellRenderer, Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public Component getCellComponent(KoalaVirtualGrid grid, Component recycled, int column, int row) {
+            JLabel label = recycled != null ? (JLabel) recycled : new JLabel();
+            label.setText(column + "," + row);
+            return label;
+        }
+    }
+}
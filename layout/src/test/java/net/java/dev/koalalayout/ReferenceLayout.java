@@ -0,0 +1,188 @@
+/*
+ * This file is part of KoalaLayout.
+ *
+ * Koala layout is a flexible grid layout for Java Swing.
+ * Copyright (C) 2012 Peter Flukiger, Jean-Marc Borer
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.java.dev.koalalayout;
+
+import java.awt.Dimension;
+import java.awt.GridBagConstraints;
+import java.awt.Insets;
+import java.awt.Rectangle;
+import java.util.List;
+
+/**
+ * The layout algorithm of KoalaLayout 1.0.5, before any optimization, kept as the reference the optimized passes must
+ * match bound for bound. Like the original, the grid grows to the cells used by the children and never shrinks, and
+ * children outside of the grown grid make the pass fail.
+ */
+final class ReferenceLayout {
+
+    private ReferenceLayout() {
+    }
+
+    /**
+     * Lays out children like the original <code>layoutContainer</code>.
+     *
+     * @param constraints constraints of the children in container order
+     * @param preferred preferred sizes of the children
+     * @param grid grid width and height, grown by the pass
+     * @param insets insets of the container
+     * @param width width of the container
+     * @param height height of the container
+     * @return the bounds of the children
+     */
+    static Rectangle[] layout(List<GridBagConstraints> constraints, List<Dimension> preferred, int[] grid,
+            Insets insets, int width, int height) {
+        int startx = 0;
+        int starty = 0;
+        for (GridBagConstraints c : constraints) {
+            int gridx = c.gridx == GridBagConstraints.RELATIVE ? startx : c.gridx;
+            int gridy = c.gridy == GridBagConstraints.RELATIVE ? starty : c.gridy;
+            int gridw = c.gridwidth == GridBagConstraints.REMAINDER ? 1 : c.gridwidth;
+            int gridh = c.gridheight == GridBagConstraints.REMAINDER ? 1 : c.gridheight;
+            startx = gridx + gridw;
+            starty = gridy + gridh;
+            grid[0] = Math.max(grid[0], startx);
+            grid[1] = Math.max(grid[1], starty);
+        }
+
+        int viewX = insets.left;
+        int viewY = insets.top;
+        int viewWidth = width - insets.left - insets.right;
+        int viewHeight = height - insets.top - insets.bottom;
+        Rectangle[] bounds = new Rectangle[constraints.size()];
+        startx = starty = 0;
+        for (int i = 0; i < bounds.length; i++) {
+            GridBagConstraints c = constraints.get(i);
+            int gridx = c.gridx == GridBagConstraints.RELATIVE ? startx : c.gridx;
+            int gridy = c.gridy == GridBagConstraints.RELATIVE ? starty : c.gridy;
+            int gridw = c.gridwidth == GridBagConstraints.REMAINDER ? grid[0] - gridx : c.gridwidth;
+            int gridh = c.gridheight == GridBagConstraints.REMAINDER ? grid[1] - gridy : c.gridheight;
+            startx = gridx + gridw;
+            starty = gridy + gridh;
+            if (gridx > grid[0] || gridy > grid[1] || gridx + gridw > grid[0] || gridy + gridh > grid[1]) {
+                throw new IndexOutOfBoundsException("child " + i + " lies outside of the grid");
+            }
+
+            int left = gridx * viewWidth / grid[0];
+            int top = gridy * viewHeight / grid[1];
+            int cellX = viewX + left + c.insets.left;
+            int cellY = viewY + top + c.insets.top;
+            int cellWidth = (gridx + gridw) * viewWidth / grid[0] - left - c.insets.left - c.insets.right;
+            int cellHeight = (gridy + gridh) * viewHeight / grid[1] - top - c.insets.top - c.insets.bottom;
+
+            Dimension pref = preferred.get(i);
+            int w;
+            int h;
+            switch (c.fill) {
+                case GridBagConstraints.NONE:
+                    w = Math.min(pref.width, cellWidth);
+                    h = Math.min(pref.height, cellHeight);
+                    break;
+                case GridBagConstraints.HORIZONTAL:
+                    w = cellWidth;
+                    h = Math.min(pref.height, cellHeight);
+                    break;
+                case GridBagConstraints.VERTICAL:
+                    w = Math.min(pref.width, cellWidth);
+                    h = cellHeight;
+                    break;
+                case GridBagConstraints.BOTH:
+                default:
+                    w = cellWidth;
+                    h = cellHeight;
+            }
+
+            int x;
+            int y;
+            switch (c.anchor) {
+                case GridBagConstraints.NORTH:
+                    x = cellX + (cellWidth - w) / 2;
+                    y = cellY;
+                    break;
+                case GridBagConstraints.NORTHEAST:
+                    x = cellX + (cellWidth - w);
+                    y = cellY;
+                    break;
+                case GridBagConstraints.EAST:
+                    x = cellX + (cellWidth - w);
+                    y = cellY + (cellHeight - h) / 2;
+                    break;
+                case GridBagConstraints.SOUTHEAST:
+                    x = cellX + (cellWidth - w);
+                    y = cellY + (cellHeight - h);
+                    break;
+                case GridBagConstraints.SOUTH:
+                    x = cellX + (cellWidth - w) / 2;
+                    y = cellY + (cellHeight - h);
+                    break;
+                case GridBagConstraints.SOUTHWEST:
+                    x = cellX;
+                    y = cellY + (cellHeight - h);
+                    break;
+                case GridBagConstraints.WEST:
+                    x = cellX;
+                    y = cellY + (cellHeight - h) / 2;
+                    break;
+                case GridBagConstraints.NORTHWEST:
+                    x = cellX;
+                    y = cellY;
+                    break;
+                case GridBagConstraints.CENTER:
+                default:
+                    x = cellX + (cellWidth - w) / 2;
+                    y = cellY + (cellHeight - h) / 2;
+            }
+            bounds[i] = new Rectangle(x, y, w, h);
+        }
+        return bounds;
+    }
+
+    /**
+     * Computes the preferred size like the original <code>preferredLayoutSize</code>.
+     */
+    static Dimension preferredSize(List<GridBagConstraints> constraints, List<Dimension> preferred, int[] grid,
+            Insets insets) {
+        int maxX = 0;
+        int maxY = 0;
+        for (int i = 0; i < constraints.size(); i++) {
+            GridBagConstraints c = constraints.get(i);
+            Dimension dim = preferred.get(i);
+            int x = (c.gridwidth > 0 ? dim.width / c.gridwidth : 1) + c.insets.left + c.insets.right;
+            int y = (c.gridheight > 0 ? dim.height / c.gridheight : 1) + c.insets.top + c.insets.bottom;
+            maxX = Math.max(maxX, x);
+            maxY = Math.max(maxY, y);
+        }
+        return new Dimension(maxX * grid[0] + insets.left + insets.right, maxY * grid[1] + insets.top + insets.bottom);
+    }
+
+    /**
+     * Computes the minimum size like the original <code>minimumLayoutSize</code>.
+     */
+    static Dimension minimumSize(List<GridBagConstraints> constraints, List<Dimension> minimum) {
+        int maxX = 0;
+        int maxY = 0;
+        for (int i = 0; i < constraints.size(); i++) {
+            GridBagConstraints c = constraints.get(i);
+            Dimension d = minimum.get(i);
+            maxX = Math.max(maxX, c.gridwidth > 0 ? ((c.gridx + c.gridwidth) * d.width) / c.gridwidth : 1);
+            maxY = Math.max(maxY, c.gridheight > 0 ? ((c.gridy + c.gridheight) * d.height) / c.gridheight : 1);
+        }
+        return new Dimension(maxX, maxY);
+    }
+}
@@ -838,78 +838,16 @@ public class KoalaLayoutSupport extends AbstractLayoutSupport {
     }
 
     /**
-     * Determines grid coodinates for x y cursor position.
+     * Determines grid coodinates for x y cursor position, i.e. the grid lines the position snaps to.
      *
      *
      * @param position
      * @param container
      * @param koalaLayout
-     * @param koalaLayoutSupportConstraints
-     * @param isTopLeft
      * @return
      */
     private Point determineGridCoordsForPosition(Point position, Container container, KoalaLayout koalaLayout) {
-
-        Insets insets = container.getInsets();
-        int viewY = insets.top;
-        int viewHeight = container.getHeight() - insets.top - insets.bottom;
-        int viewX = insets.left;
-        int viewWidth = container.getWidth() - insets.left - insets.right;
-
-        int xLimit = viewX;
-        int prevX = xLimit;
-        int gridWidth = koalaLayout.getGridwidth();
-        int cellWidth = 0;
-
-        int gridX = 0;
-        int xPos = 0;
-        int x = 0;
-        for (int i = 0; i < gridWidth; i++) {
-            x = viewX + (i * viewWidth) / gridWidth;
-            cellWidth = x - prevX;
-            xPos = position.x + cellWidth / 2;
-            if (xPos >= x) {
-                gridX = i;
-            }
-
-            if (xPos < x) {
-                break;
-            }
-
-            prevX = x;
-        }
-
-        // limit case for the last cell
-        if (xPos >= viewX + viewWidth) {
-            gridX++;
-        }
-
-        int y = viewY;
-        int prevY = y;
-        int gridHeight = koalaLayout.getGridheight();
-        int cellHeight = 0;
-
-        int yPos = 0;
-        int gridY = 0;
-        for (int i = 0; i < gridHeight; i++) {
-            y = viewY + (i * viewHeight) / gridHeight;
-            cellHeight = y - prevY;
-            yPos = position.y + cellHeight / 2;
-            if (yPos >= y) {
-                gridY = i;
-            }
-
-            if (yPos < y) {
-                break;
-            }
-
-            prevY = y;
-        }
-        if (yPos >= viewY + viewHeight) {
-            gridY++;
-        }
-
-        return new Point(gridX, gridY);
+        return koalaLayout.gridLineAt(container, position);
     }
 
     // CustomizerDialog - a non-modal dialog holding the customizer itself.